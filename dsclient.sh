@@ -0,0 +1,7 @@
+#!/bin/bash
+# Runs the client packaged by package.sh with its class-data sharing archive,
+# passing on the client arguments. The packaged client reads ds-system.xml
+# from 'compiled/', next to the jar, where ds-server writes it when run there.
+# Usage: ./dsclient.sh [client arguments]
+dir="$(dirname "$0")/compiled"
+exec java -XX:SharedArchiveFile="$dir/dsclient.jsa" -Xshare:auto -jar "$dir/dsclient.jar" "$@"
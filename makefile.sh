@@ -1,2 +1,2 @@
-javac src/*.java -d compiled/
+javac -encoding UTF-8 src/*.java -d compiled/
 echo "Created java class files in 'compiled/'."
\ No newline at end of file
@@ -0,0 +1,27 @@
+#!/bin/bash
+# Packages the client as a runnable jar in 'compiled/' together with an AppCDS
+# class-data sharing archive, recorded from a training run against ds-server.
+# Usage: ./package.sh [training_config.xml]
+# Run the packaged client with dsclient.sh.
+set -e
+cd "$(dirname "$0")"
+config=$(realpath "${1:-compiled/ds-config-schedule-scenario.xml}")
+
+javac -encoding UTF-8 src/*.java -d compiled/
+(cd compiled && jar --create --file dsclient.jar --main-class DSClient *.class)
+echo "Created runnable jar 'compiled/dsclient.jar'."
+
+# Record the classes loaded by a training session into the archive.
+(
+  cd compiled
+  ./ds-server -c "$config" -v brief -n > /dev/null &
+  # Start the client again until ds-server is listening. The client logs a
+  # refused connection to log.txt rather than failing.
+  for attempt in $(seq 50); do
+    java -XX:ArchiveClassesAtExit=dsclient.jsa -jar dsclient.jar --warmup
+    grep -q "java.net.ConnectException" log.txt || break
+    sleep 0.1
+  done
+  wait
+)
+echo "Created class-data sharing archive 'compiled/dsclient.jsa'."
@@ -0,0 +1,253 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tunes the Best Fit fitness weights and the '-e', '-t', '-b' and '-f' options of
+ * DSClient for a workload, given as a set of ds-sim configurations. Randomly
+ * sampled candidates are compared with a successive-halving search: all
+ * candidates are first run on a few configurations, only the best 1/eta of them
+ * are run on eta times as many configurations, and so on until one candidate
+ * remains. The runs of each round are run in parallel by the ScenarioRunner
+ * against ds-server or a stand-in simulator.
+ *
+ * Candidates are scored by their average turnaround time plus their average
+ * total rental cost multiplied by the cost weight, both normalised against the
+ * default options on each configuration. The best candidate is written as a
+ * profile that DSClient loads with '--profile'.
+ *
+ * Usage: java Autotuner [--server path] [--candidates n] [--eta n]
+ * [--cost-weight x] [--threads n] [--port n] [--seed n] [--out file]
+ * [config directories or files ...]
+ *
+ * The configurations default to configs/other, and the profile to
+ * ds-profile.properties.
+ */
+public class Autotuner {
+  private final static float[] WEIGHTS = { 0.25f, 0.5f, 1f, 2f, 4f };
+  private final static String DEFAULT = "default";
+
+  private final ScenarioRunner runner;
+  private final double costWeight;
+  // Results of every run so far, by candidate name and then configuration name.
+  private final Map<String, Map<String, ScenarioRunner.Result>> results =
+      new HashMap<String, Map<String, ScenarioRunner.Result>>();
+
+  /**
+   * A combination of options and fitness weights to evaluate.
+   */
+  public static class Candidate {
+    public final List<String> flags;
+    public final float[] weights;
+    public final String name;
+
+    public Candidate(List<String> flags, float[] weights) {
+      this.flags = flags;
+      this.weights = weights;
+      this.name = flags.isEmpty() && weights[0] == 1f && weights[1] == 1f && weights[2] == 1f ? DEFAULT
+          : String.join(" ", flags) + " -w " + formatWeights(weights);
+    }
+
+    /**
+     * Gets the DSClient arguments for the candidate.
+     *
+     * @return the arguments in String array format
+     */
+    public String[] args() {
+      List<String> args = new ArrayList<String>(flags);
+      args.add("-w");
+      args.add(formatWeights(weights));
+      return args.toArray(new String[0]);
+    }
+  }
+
+  public Autotuner(ScenarioRunner runner, double costWeight) {
+    this.runner = runner;
+    this.costWeight = costWeight;
+  }
+
+  public static void main(String[] args) {
+    String serverPath = "./ds-server", outPath = "ds-profile.properties";
+    int numCandidates = 27, eta = 3, threads = Runtime.getRuntime().availableProcessors(), port = 50100;
+    long seed = 1;
+    double costWeight = 1;
+    List<File> configs = new ArrayList<File>();
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--server")) {
+        serverPath = args[++i];
+      } else if (args[i].equals("--candidates")) {
+        numCandidates = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--eta")) {
+        eta = Math.max(2, Integer.parseInt(args[++i]));
+      } else if (args[i].equals("--cost-weight")) {
+        costWeight = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--threads")) {
+        threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--port")) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--out")) {
+        outPath = args[++i];
+      } else {
+        configs.addAll(ScenarioRunner.findConfigs(new File(args[i])));
+      }
+    }
+    if (configs.isEmpty()) {
+      configs.addAll(ScenarioRunner.findConfigs(new File("configs/other")));
+    }
+
+    // Shuffle the configurations so that the early rounds see a mix of them.
+    Random random = new Random(seed);
+    Collections.shuffle(configs, random);
+
+    Autotuner tuner = new Autotuner(new ScenarioRunner(serverPath, threads, port), costWeight);
+    Candidate best = tuner.tune(sampleCandidates(numCandidates, random), configs, eta);
+
+    try {
+      tuner.writeProfile(best, configs, outPath);
+      System.out.println("Wrote profile '" + outPath + "': " + best.name);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Samples distinct random candidates, always including the default options.
+   *
+   * @param numCandidates the number of candidates to sample
+   * @param random        the random number generator to sample with
+   * @return the List of Candidates
+   */
+  public static List<Candidate> sampleCandidates(int numCandidates, Random random) {
+    Map<String, Candidate> candidates = new LinkedHashMap<String, Candidate>();
+    Candidate defaults = new Candidate(new ArrayList<String>(), new float[] { 1f, 1f, 1f });
+    candidates.put(defaults.name, defaults);
+
+    // Stop after a bounded number of attempts in case the search space is smaller
+    // than the number of candidates requested.
+    for (int attempt = 0; candidates.size() < numCandidates && attempt < numCandidates * 100; attempt++) {
+      List<String> flags = new ArrayList<String>();
+      for (String flag : ScenarioRunner.FLAGS) {
+        if (random.nextBoolean()) {
+          flags.add(flag);
+        }
+      }
+
+      // The weights have no effect when the fitness is calculated by core only.
+      float[] weights = { 1f, 1f, 1f };
+      if (!flags.contains("-f")) {
+        for (int w = 0; w < weights.length; w++) {
+          weights[w] = WEIGHTS[random.nextInt(WEIGHTS.length)];
+        }
+      }
+
+      Candidate c = new Candidate(flags, weights);
+      candidates.putIfAbsent(c.name, c);
+    }
+
+    return new ArrayList<Candidate>(candidates.values());
+  }
+
+  /**
+   * Runs the successive-halving search over the candidates.
+   *
+   * @param candidates the Candidates to search, including the default options
+   * @param configs    the configuration files of the workload
+   * @param eta        the factor by which the candidates are reduced and the
+   *                   configurations increased in each round
+   * @return the best Candidate
+   */
+  public Candidate tune(List<Candidate> candidates, List<File> configs, int eta) {
+    Candidate defaults = candidates.get(0);
+    List<Candidate> survivors = new ArrayList<Candidate>(candidates);
+
+    // Start with as many configurations as allow the rounds to end with all
+    // configurations.
+    int rounds = (int) Math.ceil(Math.log(survivors.size()) / Math.log(eta));
+    int budget = Math.max(1, (int) Math.round(configs.size() / Math.pow(eta, rounds)));
+    int evaluated = 0;
+
+    while (true) {
+      // Run the survivors and the default options on the configurations added
+      // to the budget in this round.
+      int target = Math.min(configs.size(), budget);
+      Map<String, String[]> algorithms = new LinkedHashMap<String, String[]>();
+      algorithms.put(defaults.name, defaults.args());
+      for (Candidate c : survivors) {
+        algorithms.put(c.name, c.args());
+      }
+      for (ScenarioRunner.Result r : runner.runAll(configs.subList(evaluated, target), algorithms)) {
+        results.computeIfAbsent(r.algorithm, k -> new HashMap<String, ScenarioRunner.Result>()).put(r.config, r);
+      }
+      evaluated = target;
+
+      // Rank the survivors on all configurations evaluated so far.
+      List<File> evaluatedConfigs = configs.subList(0, evaluated);
+      survivors.sort(Comparator.comparingDouble(c -> score(c, defaults, evaluatedConfigs)));
+      System.out.printf("Round on %d configurations: %d candidates, best '%s' (%.4f)%n", evaluated,
+          survivors.size(), survivors.get(0).name, score(survivors.get(0), defaults, evaluatedConfigs));
+
+      if (survivors.size() == 1 || evaluated == configs.size()) {
+        return survivors.get(0);
+      }
+
+      survivors = new ArrayList<Candidate>(survivors.subList(0, (survivors.size() + eta - 1) / eta));
+      budget *= eta;
+    }
+  }
+
+  /**
+   * Scores a candidate on the configurations it has been run on, normalised
+   * against the default options. Lower is better, and the default options score
+   * 1 plus the cost weight.
+   *
+   * @param c        the Candidate to score
+   * @param defaults the Candidate with the default options
+   * @param configs  the configuration files to score on
+   * @return the score, or positive infinity if any run failed
+   */
+  public double score(Candidate c, Candidate defaults, List<File> configs) {
+    Map<String, ScenarioRunner.Result> own = results.getOrDefault(c.name, Collections.emptyMap());
+    Map<String, ScenarioRunner.Result> reference = results.getOrDefault(defaults.name, Collections.emptyMap());
+    double total = 0;
+    int count = 0;
+
+    for (File config : configs) {
+      ScenarioRunner.Result r = own.get(config.getName());
+      ScenarioRunner.Result ref = reference.get(config.getName());
+      if (r == null) {
+        continue;
+      }
+      if (ref == null || !r.ok || !ref.ok) {
+        return Double.POSITIVE_INFINITY;
+      }
+      total += r.turnaround / Math.max(1, ref.turnaround) + costWeight * r.cost / Math.max(0.01, ref.cost);
+      count++;
+    }
+    return count == 0 ? Double.POSITIVE_INFINITY : total / count;
+  }
+
+  /**
+   * Writes the candidate as a profile that DSClient loads with '--profile'.
+   *
+   * @param best    the Candidate to write
+   * @param configs the configuration files the candidate was tuned on
+   * @param path    the path of the profile file
+   * @throws IOException
+   */
+  public void writeProfile(Candidate best, List<File> configs, String path) throws IOException {
+    Candidate defaults = new Candidate(new ArrayList<String>(), new float[] { 1f, 1f, 1f });
+    try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+      out.println("# DSClient profile tuned on " + configs.size() + " configurations with cost weight " + costWeight);
+      out.printf("# score %.4f relative to %.4f for the default options%n", score(best, defaults, configs),
+          1 + costWeight);
+      out.println("flags=" + String.join(" ", best.flags));
+      out.println("weights=" + formatWeights(best.weights));
+    }
+  }
+
+  private static String formatWeights(float[] weights) {
+    return weights[0] + "," + weights[1] + "," + weights[2];
+  }
+}
@@ -0,0 +1,206 @@
+import java.util.*;
+
+/**
+ * Holds the candidate servers of a scheduling decision as primitive parallel
+ * arrays (struct-of-arrays) so that the fitness of the whole candidate set can
+ * be scored in a single pass, and the best candidate found with a single sweep.
+ * The arrays are reused between decisions and only grow when a larger candidate
+ * set is loaded.
+ */
+public class CandidateSet {
+  private Server[] servers = new Server[0];
+  private int[] freeCores = new int[0], freeMem = new int[0], freeDisk = new int[0], pendingJobs = new int[0],
+      states = new int[0];
+  private float[] scores = new float[0];
+  private int size = 0;
+  // Whether inactive candidates are ranked after every rented candidate, as
+  // scored by scorePacking().
+  private boolean deferInactive = false;
+
+  /**
+   * Loads the list of capable servers into the candidate arrays, replacing any
+   * previously loaded candidates.
+   *
+   * @param capableServers the List of Servers to load
+   */
+  public void load(List<Server> capableServers) {
+    ensureCapacity(capableServers.size());
+    size = 0;
+
+    for (Server s : capableServers) {
+      servers[size] = s;
+      freeCores[size] = s.getCore();
+      freeMem[size] = s.getMem();
+      freeDisk[size] = s.getDisk();
+      pendingJobs[size] = s.getWJobs();
+      states[size] = s.getStateCode();
+      size++;
+    }
+  }
+
+  /**
+   * Scores every loaded candidate for the job requirements with the weighted
+   * fitness statistic. Candidates with pending jobs or insufficient free
+   * resources are scored as positive infinity so that they are never selected.
+   *
+   * The loop only touches the primitive arrays and multiplies by the precomputed
+   * reciprocals of the job requirements, which keeps it free of object
+   * dereferences and divisions so the JIT can vectorise it.
+   *
+   * @param reqCore       the required cores of the job
+   * @param reqMem        the required memory of the job
+   * @param reqDisk       the required disk of the job
+   * @param fitnessByCore score only by the number of free cores if true
+   * @param coreWeight    the weight of the core ratio
+   * @param memWeight     the weight of the memory ratio
+   * @param diskWeight    the weight of the disk ratio
+   */
+  public void score(int reqCore, int reqMem, int reqDisk, boolean fitnessByCore, float coreWeight, float memWeight,
+      float diskWeight) {
+    float wCore = fitnessByCore ? 1f : coreWeight / (float) reqCore;
+    float wMem = fitnessByCore ? 0f : memWeight / (float) reqMem;
+    float wDisk = fitnessByCore ? 0f : diskWeight / (float) reqDisk;
+    deferInactive = false;
+
+    for (int i = 0; i < size; i++) {
+      float statistic = freeCores[i] * wCore + freeMem[i] * wMem + freeDisk[i] * wDisk;
+      boolean fits = (pendingJobs[i] | (freeCores[i] - reqCore) >>> 31 | (freeMem[i] - reqMem) >>> 31
+          | (freeDisk[i] - reqDisk) >>> 31) == 0;
+      scores[i] = fits ? statistic : Float.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * Scores every loaded candidate by how well the shape of the job complements
+   * the shape of its free resources, for multi-dimensional packing. The free
+   * resources are measured in multiples of the job requirements, weighted as in
+   * score(), and the alignment of that vector with the job is the cosine of
+   * their angle: it is 1 when the free resources have the same core, memory and
+   * disk proportions as the job, so the job fills them evenly, and lower when
+   * the job would leave one resource stranded. The weighted fitness statistic
+   * is scaled by up to about 1.42 as the alignment decreases, so tight fits
+   * with a matching shape score lowest.
+   *
+   * Candidates that are inactive rank after every rented candidate in argMin(),
+   * so that jobs are packed onto the servers already booted. Candidates with pending
+   * jobs or insufficient free resources are scored as positive infinity.
+   *
+   * @param reqCore    the required cores of the job
+   * @param reqMem     the required memory of the job
+   * @param reqDisk    the required disk of the job
+   * @param coreWeight the weight of the core ratio
+   * @param memWeight  the weight of the memory ratio
+   * @param diskWeight the weight of the disk ratio
+   */
+  public void scorePacking(int reqCore, int reqMem, int reqDisk, float coreWeight, float memWeight,
+      float diskWeight) {
+    float wCore = coreWeight / (float) reqCore;
+    float wMem = memWeight / (float) reqMem;
+    float wDisk = diskWeight / (float) reqDisk;
+    float job = (float) Math.sqrt(coreWeight * coreWeight + memWeight * memWeight + diskWeight * diskWeight);
+    deferInactive = true;
+
+    for (int i = 0; i < size; i++) {
+      float xCore = freeCores[i] * wCore, xMem = freeMem[i] * wMem, xDisk = freeDisk[i] * wDisk;
+      float statistic = xCore + xMem + xDisk;
+      // The cosine between the free resources and the job, both in multiples of
+      // the job requirements.
+      float norm = (float) Math.sqrt(xCore * xCore + xMem * xMem + xDisk * xDisk);
+      float alignment = norm > 0f ? (xCore * coreWeight + xMem * memWeight + xDisk * diskWeight) / (norm * job)
+          : 1f;
+      boolean fits = (pendingJobs[i] | (freeCores[i] - reqCore) >>> 31 | (freeMem[i] - reqMem) >>> 31
+          | (freeDisk[i] - reqDisk) >>> 31) == 0;
+      scores[i] = fits ? statistic * (2f - alignment) : Float.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * Finds the candidate with the lowest score. Ties are resolved to the
+   * candidate loaded first. When scored for packing, the inactive candidates are
+   * only considered if no rented candidate fits.
+   *
+   * @return the index of the best candidate, or -1 if no candidate fits
+   */
+  public int argMin() {
+    if (!deferInactive) {
+      return argMin(false, false);
+    }
+
+    int best = argMin(true, false);
+    return best != -1 ? best : argMin(true, true);
+  }
+
+  /**
+   * Finds the candidate with the lowest score, among the inactive candidates or
+   * the others.
+   *
+   * @param byState  whether to consider only the candidates of one tier
+   * @param inactive the tier to consider, the inactive candidates if true
+   * @return the index of the best candidate of the tier, or -1 if none fits
+   */
+  private int argMin(boolean byState, boolean inactive) {
+    int best = -1;
+    float minScore = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < size; i++) {
+      if (scores[i] < minScore && (!byState || (states[i] == ServerState.INACTIVE) == inactive)) {
+        minScore = scores[i];
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Takes the resources of a job placed on a candidate from its free resources,
+   * so that later decisions scored on the same candidates see the placement.
+   *
+   * @param i       the index of the candidate
+   * @param reqCore the required cores of the job
+   * @param reqMem  the required memory of the job
+   * @param reqDisk the required disk of the job
+   */
+  public void allocate(int i, int reqCore, int reqMem, int reqDisk) {
+    freeCores[i] -= reqCore;
+    freeMem[i] -= reqMem;
+    freeDisk[i] -= reqDisk;
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  public Server getServer(int i) {
+    return this.servers[i];
+  }
+
+  public int getState(int i) {
+    return this.states[i];
+  }
+
+  public int getPendingJobs(int i) {
+    return this.pendingJobs[i];
+  }
+
+  public void setPendingJobs(int i, int pendingJobs) {
+    this.pendingJobs[i] = pendingJobs;
+  }
+
+  /**
+   * Grows the candidate arrays to hold at least the given number of candidates.
+   *
+   * @param capacity the required number of candidates
+   */
+  private void ensureCapacity(int capacity) {
+    if (servers.length >= capacity) {
+      return;
+    }
+
+    servers = new Server[capacity];
+    freeCores = new int[capacity];
+    freeMem = new int[capacity];
+    freeDisk = new int[capacity];
+    pendingJobs = new int[capacity];
+    states = new int[capacity];
+    scores = new float[capacity];
+  }
+}
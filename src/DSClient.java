@@ -1,7 +1,10 @@
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.time.*;
 
 /**
@@ -26,14 +29,120 @@ import java.time.*;
  * 
  * "-f | --fitcore" -> Calculate server fitness in Best Fit by only the number
  * of available cores.
+ * 
+ * "-p | --pipeline" -> Read ds-server messages on a dedicated I/O thread and
+ * send 'REDY' without waiting for the acknowledgement of the previous 'SCHD',
+ * or for the status messages to be applied, so that the local state is
+ * updated while the replies are in flight.
+ * 
+ * "-w | --weights core,mem,disk" -> Weights of the core, memory and disk ratios
+ * in the Best Fit fitness statistic. Defaults to 1,1,1.
+ * 
+ * "--profile file" -> Load the options and fitness weights from a tuned
+ * profile, as written by the Autotuner.
+ * 
+ * "--record file" -> Record the session messages with their timing to a
+ * transcript file, which the TranscriptReplayer can replay without ds-server.
+ * 
+ * "--history file" -> Record every scheduled job with its predicted and actual
+ * start and end times to a memory-mapped JobHistory file.
+ * 
+ * "-q | --plan" -> Plan the smallest 'GETS' query for each decision, answering
+ * it from the local model or with 'GETS Avail' before sending 'GETS Capable'.
+ * 
+ * "--budget n(ms|rt)" -> Bound the search for the next available server to a
+ * budget of milliseconds or round trips per job, evaluating the servers with
+ * the shortest queues first and committing to the best found so far.
+ * 
+ * "-r | --replace" -> Place the jobs resubmitted in a burst after a server
+ * failure from the evaluation of the first job of the burst, spreading them
+ * over the capable servers. Servers that failed are also left out of the
+ * candidates until they recover.
+ * 
+ * "-k | --pack" -> Calculate server fitness in Best Fit by how well the shape of
+ * the job complements the free resources of the server, and prefer servers
+ * that are already rented, to pack jobs onto fewer servers.
+ * 
+ * "--jmx" -> Register the live cluster state, decision rate and predicted
+ * waiting time of the session as a SessionTelemetry MXBean.
+ * 
+ * "-d | --sample d" -> Evaluate only d random capable servers from the server
+ * catalog for each job, with one 'LSTJ' per sampled server instead of 'GETS
+ * Capable', so that the queries per job don't grow with the cluster size.
+ * 
+ * "--shadow file" -> Predict the server states, job lists and next available
+ * times locally alongside the real queries, log their divergence rates and
+ * write the decisions that the predictions would change to a CSV file.
+ * 
+ * "--warmup" -> Pre-touch the message parsing and scheduling paths on
+ * synthetic jobs and servers before connecting, so that the first decisions
+ * don't run in the interpreter.
+ * 
+ * "--stats dir" -> Keep workload statistics across sessions in a directory,
+ * keyed by the hash of ds-system.xml, and warm-start from those of earlier
+ * sessions on the same system: the job lists are replayed with the runtimes
+ * scaled by the observed to estimated ratio, and with -t, idle servers of the
+ * types that were often booted again after being terminated are kept.
  */
 public class DSClient {
   private final static int PORT = 50000;
   private final static String IP_ADDRESS = "localhost";
+  // Minimum number of capable servers for the job list replays to run in parallel.
+  private final static int PARALLEL_THRESHOLD = 16;
+  // Number of synthetic decisions run by the warm-up, enough for the client
+  // compiler to compile the parsing and scheduling paths.
+  private final static int WARM_UP_ROUNDS = 250;
+  private final static String USAGE = "Usage: DSClient [-g | --getsall] [-c | --cost] [-e | --est] [-t | --termidle] "
+      + "[-b | --boot] [-f | --fitcore] [-p | --pipeline] [-q | --plan] [-r | --replace] "
+      + "[-k | --pack] [-d | --sample d] [-w | --weights core,mem,disk] [--profile file] [--record file] [--history file] [--budget n(ms|rt)] [--jmx] [--shadow file] [--warmup] [--stats dir]";
+
+  // Options followed by a value, for the tools that pass client options through,
+  // and those of them naming a file written by the session.
+  final static Set<String> VALUED_OPTIONS = Set.of("-d", "--sample", "-w", "--weights", "--profile", "--record",
+      "--history", "--budget", "--shadow", "--stats");
+  // The acknowledgement sent for each line of a 'GETS' or 'LSTJ' reply.
+  final static byte[] OK = "OK\n".getBytes(StandardCharsets.US_ASCII);
+  final static Set<String> OUTPUT_OPTIONS = Set.of("--record", "--history", "--shadow");
 
   Socket DSServer;
   boolean useEstWaitTime = false, terminateIdleServers = false, useXMLParser = true,
-      bootingAsAvailable = false, fitnessByCore = false;;
+      bootingAsAvailable = false, fitnessByCore = false, pipelineIO = false, planQueries = false,
+      fastReplacement = false, packShapes = false, warmUp = false;
+  MessageReader reader;
+  LineReader lines;
+  OutputStream out;
+  TranscriptRecorder recorder;
+  JobHistory history;
+  int pendingAcks = 0, scheduledJobs = 0, roundTrips = 0;
+  // Whether 'REDY' was already sent ahead of getNextJob(), when pipelining.
+  boolean readySent = false;
+  String systemXmlPath, recordPath, historyPath, shadowPath, statsDir;
+  // Predicted start time of the job on the server chosen by bestFitServer().
+  int predictedStart, nextAvailableTime;
+  // Wall clock time of the first 'SCHD', or 0 before it is sent.
+  long firstScheduleTime = 0;
+  // Per-decision budget of the anytime search, in nanoseconds or round trips.
+  long timeBudget = 0, decisionStartTime;
+  int tripBudget = 0, decisionStartTrips, budgetCutoffs = 0;
+  // Number of capable servers sampled for each job, or 0 to evaluate them all.
+  int sampleSize = 0;
+  ServerSampler sampler;
+  SessionTelemetry telemetry;
+  ShadowValidator shadow;
+  WorkloadStats stats;
+  // Factor to scale the estimated runtimes by in the replays of the job lists.
+  float runtimeScale = 1f;
+  float coreWeight = 1f, memWeight = 1f, diskWeight = 1f;
+  CandidateSet candidates = new CandidateSet();
+  JobPool jobPool = new JobPool();
+  QueryPlanner planner = new QueryPlanner();
+  // Servers reported failed with 'RESF' and not yet recovered, keyed by
+  // ServerType code and server ID.
+  Set<Long> failedServers = new HashSet<Long>();
+  ResubmissionBurst burst = new ResubmissionBurst();
+  // Next available times evaluated by the last getNextAvailableServer() call, or
+  // -1 for the servers it did not evaluate.
+  int[] evaluatedTimes;
 
   public DSClient () {
   }
@@ -53,18 +162,8 @@ public class DSClient {
       // complete the handshake.
       dsclient.connect(PORT, System.getProperty("user.name"));
 
-      // Get the first job for scheduling.
-      Job j = dsclient.getNextJob();
-
-      while (j != null) {
-        // Get the best fit server for the job
-        Server bestFitServer;
-        bestFitServer = dsclient.bestFitServer(j);
-
-        // Schedule to the best fit server
-        dsclient.dispatch(j, bestFitServer);
-        j = dsclient.getNextJob();
-      }
+      // Schedule jobs until there are no more jobs to schedule.
+      dsclient.schedule();
       
       // When there are no more jobs to schedule or an unexpected error occurs,
       // disconnect safely from the ds-server.
@@ -76,6 +175,26 @@ public class DSClient {
     }
   }
 
+  /**
+   * Runs the scheduling session on the connected ds-server, getting each job and
+   * dispatching it to the best fit server until there are no more jobs to
+   * schedule.
+   */
+  public void schedule() {
+    // Get the first job for scheduling.
+    Job j = getNextJob();
+
+    while (j != null) {
+      // Get the best fit server for the job
+      Server bestFitServer;
+      bestFitServer = bestFitServer(j);
+
+      // Schedule to the best fit server
+      dispatch(j, bestFitServer);
+      j = getNextJob();
+    }
+  }
+
   /**
    * Parses the argument list and sets the specified program configuration
    * parameters.
@@ -83,6 +202,10 @@ public class DSClient {
    * @param args the program runtime arguments
    */
   public void configureClient(String[] args) {
+    // Expand the tuned profiles into their options first, so that the options are
+    // parsed and the client is set up only once.
+    args = expandProfiles(args);
+
     // Check through each argument and set the corresponding program configuration
     // variable.
     for (int i = 0; i < args.length; i++) {
@@ -96,25 +219,252 @@ public class DSClient {
         bootingAsAvailable = true;
       } else if (args[i].equals("-f") || args[i].equals("--fitcore")) {
         fitnessByCore = true;
+      } else if (args[i].equals("-p") || args[i].equals("--pipeline")) {
+        pipelineIO = true;
+      } else if (args[i].equals("-q") || args[i].equals("--plan")) {
+        planQueries = true;
+      } else if (args[i].equals("-k") || args[i].equals("--pack")) {
+        packShapes = true;
+      } else if (args[i].equals("-r") || args[i].equals("--replace")) {
+        fastReplacement = true;
+      } else if ((args[i].equals("-d") || args[i].equals("--sample")) && i + 1 < args.length
+          && setSampleSize(args[i + 1])) {
+        i++;
+      } else if ((args[i].equals("-w") || args[i].equals("--weights")) && i + 1 < args.length
+          && setFitnessWeights(args[i + 1])) {
+        i++;
+      } else if (args[i].equals("--record") && i + 1 < args.length) {
+        recordPath = args[++i];
+      } else if (args[i].equals("--history") && i + 1 < args.length) {
+        historyPath = args[++i];
+      } else if (args[i].equals("--budget") && i + 1 < args.length && setBudget(args[i + 1])) {
+        i++;
+      } else if (args[i].equals("--shadow") && i + 1 < args.length) {
+        shadowPath = args[++i];
+      } else if (args[i].equals("--stats") && i + 1 < args.length) {
+        statsDir = args[++i];
+      } else if (args[i].equals("--warmup")) {
+        warmUp = true;
+      } else if (args[i].equals("--jmx")) {
+        telemetry = new SessionTelemetry();
       } else if (args[i].equals("--help")) {
-        System.out.println("Usage: DSClient [-g | --getsall] [-c | --cost] [-e | --est] [-t | --termidle] [-b | --boot] [-f | --fitcore]");
+        System.out.println(USAGE);
         System.exit(0);
       } else {
         System.err.println("Invalid argument: " + args[i]);
-        System.err.println("Usage: DSClient [-g | --getsall] [-c | --cost] [-e | --est] [-t | --termidle] [-b | --boot] [-f | --fitcore]");
+        System.err.println(USAGE);
         System.exit(1);
       }
     }
 
     // Check to see if ds-system.xml exists at expected path if using XMLParser
     if (useXMLParser) {
-      String filepath = XMLParser.getFilePath();
-      if (filepath == "unavailable") {
+      // Default to ds-system.xml in the client directory unless a path was set.
+      if (systemXmlPath == null) {
+        systemXmlPath = XMLParser.getFilePath();
+      }
+      if (systemXmlPath.equals("unavailable") || !new File(systemXmlPath).exists()) {
         // If it's unavailable, report & default to "GETS All" request to ds-server
         System.err.println("ds-system.xml file not found in local directory");
         useXMLParser = false;
       }
     }
+
+    // The query planner needs the server type capacities to answer decisions from
+    // its local model.
+    if (planQueries && useXMLParser) {
+      planner.setCapacities(XMLParser.getCatalog(systemXmlPath));
+    }
+    if (fastReplacement && useXMLParser) {
+      burst.setCapacities(XMLParser.getCatalog(systemXmlPath));
+    }
+    if (telemetry != null && useXMLParser) {
+      telemetry.setBootTimes(XMLParser.getCatalog(systemXmlPath));
+    }
+    // Shadow mode predicts the servers from the capacities and boot times of the
+    // server types.
+    if (shadowPath != null && useXMLParser) {
+      shadow = new ShadowValidator(XMLParser.getCatalog(systemXmlPath));
+    } else if (shadowPath != null) {
+      System.err.println("Shadow mode needs ds-system.xml, disabled");
+    }
+    // Warm-start from the workload statistics of earlier sessions on the same
+    // system, identified by its ds-system.xml.
+    if (statsDir != null && useXMLParser) {
+      stats = WorkloadStats.load(statsDir, systemXmlPath);
+      if (stats != null) {
+        runtimeScale = stats.getRuntimeScale();
+        System.err.println("Workload: " + stats);
+      }
+    } else if (statsDir != null) {
+      System.err.println("Workload statistics need ds-system.xml, disabled");
+    }
+  }
+
+  /**
+   * Sets the weights of the core, memory and disk ratios in the Best Fit fitness
+   * statistic.
+   * 
+   * @param weights the comma separated core, memory and disk weights
+   * @return true if the weights were valid and set, false otherwise
+   */
+  public boolean setFitnessWeights(String weights) {
+    String[] parsed = weights.split(",");
+    if (parsed.length != 3) {
+      return false;
+    }
+
+    try {
+      coreWeight = Float.parseFloat(parsed[0]);
+      memWeight = Float.parseFloat(parsed[1]);
+      diskWeight = Float.parseFloat(parsed[2]);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Sets the per-decision budget of the anytime search for the next available
+   * server.
+   * 
+   * @param budget the number of milliseconds followed by 'ms', or the number of
+   *               round trips followed by 'rt'
+   * @return true if the budget was valid and set, false otherwise
+   */
+  public boolean setBudget(String budget) {
+    try {
+      if (budget.endsWith("ms")) {
+        timeBudget = Long.parseLong(budget.substring(0, budget.length() - 2)) * 1000000L;
+      } else if (budget.endsWith("rt")) {
+        tripBudget = Integer.parseInt(budget.substring(0, budget.length() - 2));
+      } else {
+        return false;
+      }
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    return timeBudget >= 0 && tripBudget >= 0;
+  }
+
+  /**
+   * Sets the number of capable servers sampled for each job.
+   * 
+   * @param size the sample size, at least 1
+   * @return true if the sample size was valid and set, false otherwise
+   */
+  public boolean setSampleSize(String size) {
+    try {
+      sampleSize = Integer.parseInt(size);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    return sampleSize > 0;
+  }
+
+  /**
+   * Replaces each '--profile file' in the program arguments with the options of
+   * the tuned profile, in place, so that later arguments still override them.
+   * 
+   * @param args the program runtime arguments
+   * @return the arguments with the profiles expanded
+   */
+  public String[] expandProfiles(String[] args) {
+    List<String> expanded = new ArrayList<String>(args.length);
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--profile") && i + 1 < args.length) {
+        expanded.addAll(loadProfile(args[++i]));
+      } else {
+        expanded.add(args[i]);
+      }
+    }
+    return expanded.toArray(new String[0]);
+  }
+
+  /**
+   * Loads a tuned profile as program arguments. The profile is a properties file
+   * with the program arguments under 'flags' and the comma separated fitness
+   * weights under 'weights', which become a '-w' option.
+   * 
+   * @param path the path of the profile file
+   * @return the options of the profile, or none if it could not be loaded
+   */
+  public List<String> loadProfile(String path) {
+    List<String> options = new ArrayList<String>();
+    Properties profile = new Properties();
+    try (FileReader in = new FileReader(path)) {
+      profile.load(in);
+    } catch (IOException e) {
+      System.err.println("Could not load profile '" + path + "': " + e.getMessage());
+      return options;
+    }
+
+    String flags = profile.getProperty("flags", "").trim();
+    if (!flags.isEmpty()) {
+      options.addAll(Arrays.asList(flags.split("\\s+")));
+    }
+
+    String weights = profile.getProperty("weights");
+    if (weights != null && weights.trim().matches("([-+]?[0-9]*\\.?[0-9]+,){2}[-+]?[0-9]*\\.?[0-9]+")) {
+      options.add("-w");
+      options.add(weights.trim());
+    } else if (weights != null) {
+      System.err.println("Invalid weights in profile '" + path + "': " + weights);
+    }
+    System.err.println("Loaded profile '" + path + "'");
+    return options;
+  }
+
+  /**
+   * Pre-touches the message parsing and scheduling paths by running them on
+   * synthetic jobs and servers, so that they are compiled before the first
+   * decision. Servers are only parsed for the types of the server catalog, to
+   * keep the synthetic data out of the ServerType registry, and nothing is sent
+   * to ds-server.
+   */
+  public void warmUp() {
+    long start = System.nanoTime();
+    List<Server> catalog = useXMLParser ? XMLParser.getCatalog(systemXmlPath) : Collections.<Server>emptyList();
+    CandidateSet warmUpCandidates = new CandidateSet();
+    JobPool warmUpJobs = new JobPool();
+
+    for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+      // Parse a job as received with 'JOBN', and a job list from the bytes of the
+      // lines listed with 'LSTJ', like readJob().
+      Job j = new Job("JOBN " + round + " " + round + " 100 " + (1 + round % 4) + " 500 1000");
+      StringBuilder jobLines = new StringBuilder();
+      for (int k = 0; k < 4; k++) {
+        jobLines.append(k).append(' ').append(k < 2 ? JobState.RUNNING : JobState.WAITING).append(' ')
+            .append(k < 2 ? k : -1).append(' ').append(50 + k).append(" 2 1000 2000\n");
+      }
+      jobLines.append(".\n");
+      LineReader jobReader = new LineReader(
+          new ByteArrayInputStream(jobLines.toString().getBytes(StandardCharsets.US_ASCII)));
+      List<Job> serverJobs = new ArrayList<Job>();
+      warmUpJobs.reset();
+      try {
+        while (jobReader.readLine() && !jobReader.matches(".")) {
+          serverJobs.add(warmUpJobs.acquire(jobReader.buffer(), jobReader.length()));
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+
+      // Parse the catalog servers as listed with 'GETS', and score them.
+      List<Server> servers = new ArrayList<Server>(catalog.size());
+      for (Server s : catalog) {
+        servers.add(new Server(s.getType() + " " + s.getID() + " " + ServerState.name(round % 4) + " -1 "
+            + s.getCore() + " " + s.getMem() + " " + s.getDisk() + " " + round % 2 + " " + round % 3));
+      }
+      warmUpCandidates.load(servers);
+      scoreCandidates(warmUpCandidates, j);
+      warmUpCandidates.argMin();
+
+      // Replay the job list for the next available time.
+      Server s = new Server(0, 0, ServerState.ACTIVE, 0, 0, 0, 0, 0, 0f);
+      calcServerAvailableTime(s, serverJobs, new Resource(0, 0, 0, 2), j.getCore(), j.getMemory(), j.getDisk());
+    }
+    System.err.printf("Warm-up: %d rounds in %.1f ms%n", WARM_UP_ROUNDS, (System.nanoTime() - start) / 1e6);
   }
 
   /**
@@ -127,50 +477,304 @@ public class DSClient {
    * available server is retrieved with the getNextAvailableServer() function that
    * returns the capable server with the lowest available server time for the job.
    * 
+   * If query planning is configured, the capable servers are taken from the local
+   * model of the QueryPlanner when it is fresh, and otherwise the best fit is
+   * first looked for with 'GETS Avail', so that 'GETS Capable' is only sent when
+   * neither is enough.
+   * 
    * @param j the Job that the Server should fit
    * @return the best fitting Server
    */
   public Server bestFitServer(Job j) {
-    // Get a list of servers with the capable for the job.
-    List<Server> capableServers = getCapableServers(j.getCore(), j.getMemory(), j.getDisk());
+    // Reclaim the server jobs retrieved for the previous decision.
+    jobPool.reset();
+    planner.startDecision();
+    predictedStart = j.getSubmitTime();
+    decisionStartTime = System.nanoTime();
+    decisionStartTrips = roundTrips;
+
+    // If configured, place a job resubmitted in a burst after a server failure
+    // from the evaluation of the first job of the burst.
+    if (fastReplacement && burst.covers(j)) {
+      return bestFitFromBurst(j);
+    }
 
-    float minFitness = Float.MAX_VALUE;
-    Server BFServer = null;
-    // Find the available server with the lowest fitness.
-    for (Server s : capableServers) {
-      // Consider a server in the booting state as available if the option is
-      // configured
-      if ((bootingAsAvailable && s.getState().equals("booting")) || s.getWJobs() == 0) {
-        Resource fitness = calcServerUtilisation(s);
-        if (fitness.getPendingJobs() == 0 && fitness.getAvailableMem() >= j.getMemory()
-            && fitness.getAvailableDisk() >= j.getDisk() && fitness.getAvailableCores() >= j.getCore()) {
-          
-          float statistic;
-          // Calculate the fitness ans the available cores if configured as such,
-          // otherwise calculate the combined fitness statistic.
-          if (fitnessByCore) {
-            statistic = fitness.getAvailableCores();
-          } else {
-            statistic = ((float) fitness.getAvailableCores() / (float) j.getCore())
-                + ((float) fitness.getAvailableMem() / (float) j.getMemory())
-                + ((float) fitness.getAvailableDisk() / (float) j.getDisk());
-          }
+    // If configured, evaluate only a random sample of the capable servers.
+    if (sampleSize > 0) {
+      Server sampled = bestFitSampled(j);
+      if (sampled != null) {
+        return sampled;
+      }
+    }
 
-          if (statistic < minFitness) {
-            minFitness = statistic;
-            BFServer = s;
-          }
+    // If configured, use the local model of the capable servers if it is fresh,
+    // otherwise try 'GETS Avail' if it may produce a fit.
+    List<Server> capableServers = null;
+    if (planQueries) {
+      capableServers = planner.getModelServers(j.getSubmitTime(), j.getCore(), j.getMemory(), j.getDisk());
+      if (capableServers != null) {
+        planner.modelHit();
+      } else if (planner.shouldQueryAvail(j.getCore(), j.getMemory(), j.getDisk())) {
+        List<Server> availServers = getAvailServers(j.getCore(), j.getMemory(), j.getDisk());
+        if (fastReplacement) {
+          availServers = withoutFailedServers(availServers);
+        }
+        Server BFServer = availServers.isEmpty() ? null : bestFitAmong(j, availServers);
+        planner.availQueried(j.getCore(), j.getMemory(), j.getDisk(), BFServer != null);
+        if (BFServer != null) {
+          return BFServer;
         }
       }
     }
 
-    // If there are no available servers, get the next available server.
-    if (BFServer == null) {
+    // Get a list of servers with the capable for the job.
+    boolean queried = capableServers == null;
+    if (capableServers == null) {
+      capableServers = getCapableServers(j.getCore(), j.getMemory(), j.getDisk());
+      planner.capableQueried(capableServers, j.getCore(), j.getMemory(), j.getDisk());
+    }
+    // With fast re-placement, never place a job on a server that failed and has
+    // not recovered.
+    if (fastReplacement) {
+      capableServers = withoutFailedServers(capableServers);
+    }
+
+    // Find the available server with the lowest fitness.
+    Server BFServer = bestFitAmong(j, capableServers);
+    boolean fit = BFServer != null;
+
+    // If there are no available servers, get the next available server. The job
+    // is predicted to start at its next available time, which is a waiting time
+    // if estimated by ds-sim.
+    if (!fit) {
       BFServer = getNextAvailableServer(capableServers, j.getCore(), j.getMemory(), j.getDisk());
+      predictedStart = useEstWaitTime ? j.getSubmitTime() + nextAvailableTime
+          : Math.max(j.getSubmitTime(), nextAvailableTime);
+    }
+
+    // In shadow mode, compare the decision with the one predicted locally.
+    if (shadow != null && queried) {
+      shadow.validate(this, j, capableServers, BFServer, fit || useEstWaitTime ? null : evaluatedTimes);
+    }
+
+    // If configured, start a burst from the evaluation of a resubmitted job.
+    if (fastReplacement && j.isResubmitted()) {
+      burst.start(j, capableServers, fit ? null : evaluatedTimes, capableServers.indexOf(BFServer), fit);
     }
     return BFServer;
   }
 
+  /**
+   * Finds the best fit server for a job resubmitted in a burst from the
+   * candidates of the first job of the burst, without querying ds-server for the
+   * capable servers again. If no candidate has sufficient available resources,
+   * the candidate available soonest is chosen, evaluating only the candidates
+   * that the previous decisions of the burst did not evaluate. The job is
+   * applied to the chosen candidate, so that the next jobs of the burst spread
+   * over the other candidates.
+   * 
+   * @param j the resubmitted Job covered by the burst
+   * @return the best fitting Server
+   */
+  public Server bestFitFromBurst(Job j) {
+    CandidateSet burstCandidates = burst.getCandidates();
+    scoreCandidates(burstCandidates, j);
+    int best = burstCandidates.argMin();
+    if (best >= 0) {
+      burst.placed(best, j, true);
+      return burstCandidates.getServer(best);
+    }
+
+    // Find the capable candidate that is available soonest, preferring the first
+    // candidate on ties. The available times of the burst only hold for jobs no
+    // larger than its first job, so larger jobs are evaluated again, unless the
+    // times are waiting time estimates, which don't depend on the job.
+    boolean evaluated = useEstWaitTime || burst.isEvaluated(j);
+    int minTime = Integer.MAX_VALUE;
+    best = 0;
+    for (int i = 0; i < burstCandidates.size(); i++) {
+      if (!burst.isCapable(i, j)) {
+        continue;
+      }
+      int availableTime = evaluated ? burst.getAvailableTime(i) : -1;
+      if (availableTime < 0) {
+        Server s = burstCandidates.getServer(i);
+        Server capacity = burst.getCapacity(i);
+        if (useEstWaitTime) {
+          availableTime = getServerEstWaitTime(s);
+        } else if (capacity == null) {
+          availableTime = getServerAvailableTime(s, j.getCore(), j.getMemory(), j.getDisk());
+        } else {
+          // The state listed when the burst started is stale once jobs of the burst
+          // were placed on the server, so derive it from the current job list.
+          List<Job> serverJobs = getServerJobs(s);
+          Server current = capacity.observe(serverJobs);
+          availableTime = calcServerAvailableTime(current, serverJobs, calcServerUtilisation(current, serverJobs),
+              j.getCore(), j.getMemory(), j.getDisk(), runtimeScale);
+        }
+        if (evaluated) {
+          burst.setAvailableTime(i, availableTime);
+        }
+      }
+      if (availableTime < minTime) {
+        best = i;
+        minTime = availableTime;
+      }
+    }
+    burst.placed(best, j, false);
+
+    nextAvailableTime = minTime;
+    predictedStart = useEstWaitTime ? j.getSubmitTime() + nextAvailableTime
+        : Math.max(j.getSubmitTime(), nextAvailableTime);
+    return burstCandidates.getServer(best);
+  }
+
+  /**
+   * Finds the best fit server for a job among a random sample of the capable
+   * servers in the server catalog. The state of each sampled server is derived
+   * from its job list, retrieved with a single 'LSTJ', so a decision takes a
+   * number of queries proportional to the sample size whatever the size of the
+   * cluster. If no sampled server has sufficient available resources, the
+   * sampled server available soonest is chosen.
+   * 
+   * @param j the Job that the Server should fit
+   * @return the best fitting sampled Server, or null if the catalog has no
+   *         server capable of the job
+   */
+  public Server bestFitSampled(Job j) {
+    // Sample from the server catalog, retrieved the first time it is needed.
+    if (sampler == null) {
+      sampler = new ServerSampler(decideGetServers(), sampleSize);
+    }
+    // Servers that failed and have not recovered are left out before sampling,
+    // so that they don't take the place of servers that could run the job.
+    List<Server> sample = sampler.sample(j.getCore(), j.getMemory(), j.getDisk(), failedServers);
+    if (sample.isEmpty()) {
+      // Leave the job to the search of the capable servers reported by ds-server.
+      return null;
+    }
+
+    // Derive the current state of the sampled servers from their job lists.
+    List<Server> servers = new ArrayList<Server>(sample.size());
+    List<List<Job>> serverJobs = new ArrayList<List<Job>>(sample.size());
+    for (Server s : sample) {
+      List<Job> jobs = getServerJobs(s);
+      servers.add(s.observe(jobs));
+      serverJobs.add(jobs);
+    }
+
+    Server BFServer = bestFitAmong(j, servers);
+    if (BFServer != null) {
+      return BFServer;
+    }
+
+    // Find the sampled server that is available soonest, replaying the job lists
+    // already retrieved, which also give the pending jobs of booting servers.
+    int minTime = Integer.MAX_VALUE;
+    int best = 0;
+    for (int i = 0; i < servers.size(); i++) {
+      Server s = servers.get(i);
+      int availableTime = useEstWaitTime ? getServerEstWaitTime(s)
+          : calcServerAvailableTime(s, serverJobs.get(i), calcServerUtilisation(s, serverJobs.get(i)), j.getCore(),
+              j.getMemory(), j.getDisk(), runtimeScale);
+      if (availableTime < minTime) {
+        best = i;
+        minTime = availableTime;
+      }
+    }
+
+    nextAvailableTime = minTime;
+    predictedStart = useEstWaitTime ? j.getSubmitTime() + nextAvailableTime
+        : Math.max(j.getSubmitTime(), nextAvailableTime);
+    return servers.get(best);
+  }
+
+  /**
+   * Removes the servers that failed and have not recovered from a list of
+   * servers, unless no other server is left.
+   * 
+   * @param servers the List of Servers
+   * @return the Servers that have not failed
+   */
+  public List<Server> withoutFailedServers(List<Server> servers) {
+    if (failedServers.isEmpty()) {
+      return servers;
+    }
+
+    List<Server> available = new ArrayList<Server>(servers.size());
+    for (Server s : servers) {
+      if (!failedServers.contains(serverKey(s.getTypeCode(), s.getID()))) {
+        available.add(s);
+      }
+    }
+    return available.isEmpty() ? servers : available;
+  }
+
+  private static long serverKey(int type, int ID) {
+    return (long) type << 32 | ID;
+  }
+
+  /**
+   * Finds the end of a space delimited field of a ds-server message.
+   * 
+   * @param s     the message holding the fields
+   * @param start the index of the first character of the field
+   * @return the index after the last character of the field
+   */
+  private static int fieldEnd(String s, int start) {
+    int end = s.indexOf(' ', start);
+    return end == -1 ? s.length() : end;
+  }
+
+  /**
+   * Finds the server with sufficient available resources for the job and with
+   * the lowest aggregated fitness value from a list of servers.
+   * 
+   * @param j       the Job that the Server should fit
+   * @param servers the list of Servers to compare from
+   * @return the best fitting Server, or null if no Server has sufficient
+   *         available resources
+   */
+  public Server bestFitAmong(Job j, List<Server> servers) {
+    // Load the servers into the candidate arrays.
+    candidates.load(servers);
+
+    // Consider a server in the booting state as available if the option is
+    // configured, recalculating its pending jobs to determine whether any are
+    // actually waiting.
+    if (bootingAsAvailable) {
+      for (int i = 0; i < candidates.size(); i++) {
+        if (candidates.getState(i) == ServerState.BOOTING && candidates.getPendingJobs(i) > 0) {
+          candidates.setPendingJobs(i, calcServerUtilisation(candidates.getServer(i)).getPendingJobs());
+        }
+      }
+    }
+
+    scoreCandidates(candidates, j);
+
+    // Find the available server with the lowest fitness.
+    int best = candidates.argMin();
+    return best >= 0 ? candidates.getServer(best) : null;
+  }
+
+  /**
+   * Scores a whole candidate set for a job in one pass. The fitness is the
+   * number of available cores if configured as such, the complementary shape
+   * packing score if configured, and otherwise the combined fitness statistic
+   * with the configured weights.
+   * 
+   * @param candidateSet the loaded CandidateSet
+   * @param j            the Job that the Server should fit
+   */
+  public void scoreCandidates(CandidateSet candidateSet, Job j) {
+    if (packShapes && !fitnessByCore) {
+      candidateSet.scorePacking(j.getCore(), j.getMemory(), j.getDisk(), coreWeight, memWeight, diskWeight);
+    } else {
+      candidateSet.score(j.getCore(), j.getMemory(), j.getDisk(), fitnessByCore, coreWeight, memWeight,
+          diskWeight);
+    }
+  }
+
   /**
    * This function finds the next available server times for the servers in the
    * list and returns the server that is available soonest.
@@ -182,10 +786,23 @@ public class DSClient {
    * @return
    */
   public Server getNextAvailableServer(List<Server> capableServers, int reqCore, int reqMem, int reqDisk) {
+    // If a budget is configured, search the most promising servers first.
+    if (timeBudget > 0 || tripBudget > 0) {
+      return getNextAvailableServerAnytime(capableServers, reqCore, reqMem, reqDisk);
+    }
+
+    // If there are enough servers for it to pay off, replay the server job lists
+    // in parallel.
+    if (!useEstWaitTime && capableServers.size() >= PARALLEL_THRESHOLD) {
+      return getNextAvailableServerParallel(capableServers, reqCore, reqMem, reqDisk);
+    }
+
     int minTime = Integer.MAX_VALUE;
     Server nextServer = capableServers.get(0);
+    evaluatedTimes = new int[capableServers.size()];
     // Find the server that is available soonest.
-    for (Server s : capableServers) {
+    for (int i = 0; i < capableServers.size(); i++) {
+      Server s = capableServers.get(i);
       int availableTime;
       // If configured, use estimated server wait time, otherwise use the more precise
       // getServerAvailableTime function.
@@ -194,12 +811,117 @@ public class DSClient {
       } else {
         availableTime = getServerAvailableTime(s, reqCore, reqMem, reqDisk);
       }
+      evaluatedTimes[i] = availableTime;
       if (availableTime < minTime) {
         nextServer = s;
         minTime = availableTime;
       }
     }
 
+    nextAvailableTime = minTime;
+    return nextServer;
+  }
+
+  /**
+   * Finds the server that is available soonest like getNextAvailableServer(),
+   * but within the per-decision budget. The servers are evaluated in order of
+   * their waiting jobs and then running jobs, so idle servers and the shortest
+   * queues come first, and the search commits to the best server found so far
+   * once the budget is spent. At least one server is always evaluated.
+   * 
+   * @param capableServers the list of Servers to compare from
+   * @param reqCore        the required available cores from the server
+   * @param reqMem         the required available memory from the server
+   * @param reqDisk        the required available disk from the server
+   * @return the Server that is available soonest among those evaluated
+   */
+  public Server getNextAvailableServerAnytime(List<Server> capableServers, int reqCore, int reqMem, int reqDisk) {
+    // Order the servers promising-first, keeping the order of ds-server on ties.
+    List<Integer> order = IntStream.range(0, capableServers.size()).boxed()
+        .sorted(Comparator.comparingInt((Integer i) -> capableServers.get(i).getWJobs())
+            .thenComparingInt(i -> capableServers.get(i).getRJobs()))
+        .collect(Collectors.toList());
+
+    int minTime = Integer.MAX_VALUE;
+    int best = order.get(0);
+    evaluatedTimes = new int[capableServers.size()];
+    Arrays.fill(evaluatedTimes, -1);
+    for (int k = 0; k < order.size(); k++) {
+      // Commit to the best server so far once the budget is spent.
+      if (k > 0 && budgetSpent()) {
+        budgetCutoffs++;
+        break;
+      }
+
+      int i = order.get(k);
+      Server s = capableServers.get(i);
+      int availableTime = useEstWaitTime ? getServerEstWaitTime(s)
+          : getServerAvailableTime(s, reqCore, reqMem, reqDisk);
+      evaluatedTimes[i] = availableTime;
+      // Prefer the first server in the list of ds-server on ties, like the full
+      // search.
+      if (availableTime < minTime || (availableTime == minTime && i < best)) {
+        best = i;
+        minTime = availableTime;
+      }
+    }
+
+    nextAvailableTime = minTime;
+    return capableServers.get(best);
+  }
+
+  /**
+   * Checks whether the budget of the current decision has been spent.
+   * 
+   * @return true if the time or round trip budget has been reached
+   */
+  private boolean budgetSpent() {
+    return (timeBudget > 0 && System.nanoTime() - decisionStartTime >= timeBudget)
+        || (tripBudget > 0 && roundTrips - decisionStartTrips >= tripBudget);
+  }
+
+  /**
+   * Finds the server that is available soonest like getNextAvailableServer(),
+   * but first fetches a snapshot of the job lists and resources of every server
+   * from ds-sim, and then replays the job lists of the different servers in
+   * parallel on the common fork-join pool, as the replays are independent.
+   * 
+   * @param capableServers the list of Servers to compare from
+   * @param reqCore        the required available cores from the server
+   * @param reqMem         the required available memory from the server
+   * @param reqDisk        the required available disk from the server
+   * @return the Server that is available soonest
+   */
+  public Server getNextAvailableServerParallel(List<Server> capableServers, int reqCore, int reqMem, int reqDisk) {
+    int numServers = capableServers.size();
+    List<List<Job>> serverJobs = new ArrayList<List<Job>>(numServers);
+    List<Resource> resources = new ArrayList<Resource>(numServers);
+
+    // Fetch the job lists and resources of every server on the I/O thread, in the
+    // same order as the serial evaluation.
+    for (Server s : capableServers) {
+      serverJobs.add(getServerJobs(s));
+      resources.add(calcServerUtilisation(s));
+    }
+
+    // Replay the job lists of the servers in parallel.
+    int[] availableTimes = new int[numServers];
+    IntStream.range(0, numServers).parallel().forEach(i -> availableTimes[i] = calcServerAvailableTime(
+        capableServers.get(i), serverJobs.get(i), resources.get(i), reqCore, reqMem, reqDisk, runtimeScale));
+
+    evaluatedTimes = availableTimes;
+    // Find the server that is available soonest, preferring the first server
+    // in the list on ties.
+    int minTime = Integer.MAX_VALUE;
+    Server nextServer = capableServers.get(0);
+    for (int i = 0; i < numServers; i++) {
+      if (availableTimes[i] < minTime) {
+        nextServer = capableServers.get(i);
+        minTime = availableTimes[i];
+      }
+    }
+
+    nextAvailableTime = minTime;
     return nextServer;
   }
 
@@ -239,27 +961,65 @@ public class DSClient {
     // Get a list of server jobs.
     List<Job> serverJobs = getServerJobs(s);
 
+    // Get the current available resources of the server.
+    Resource utilisedResources = calcServerUtilisation(s);
+
+    return calcServerAvailableTime(s, serverJobs, utilisedResources, reqCore, reqMem, reqDisk, runtimeScale);
+  }
+
+  /**
+   * Calculates the next available server time by replaying the jobs already
+   * fetched for the server. Does not communicate with ds-sim, so the replays of
+   * different servers can run concurrently.
+   * 
+   * @param s                 the Server to get the next available time for
+   * @param serverJobs        the Jobs assigned to the Server
+   * @param utilisedResources the current available resources of the Server
+   * @param reqCore           the required available cores from the server
+   * @param reqMem            the required available memory from the server
+   * @param reqDisk           the required available disk from the server
+   * @return the next available server time for the Server
+   */
+  public static int calcServerAvailableTime(Server s, List<Job> serverJobs, Resource utilisedResources, int reqCore,
+      int reqMem, int reqDisk) {
+    return calcServerAvailableTime(s, serverJobs, utilisedResources, reqCore, reqMem, reqDisk, 1f);
+  }
+
+  /**
+   * Calculates the next available server time by replaying the jobs already
+   * fetched for the server, with their estimated runtimes scaled.
+   * 
+   * @param s                 the Server to get the next available time for
+   * @param serverJobs        the Jobs assigned to the Server
+   * @param utilisedResources the current available resources of the Server
+   * @param reqCore           the required available cores from the server
+   * @param reqMem            the required available memory from the server
+   * @param reqDisk           the required available disk from the server
+   * @param runtimeScale      the factor to scale the estimated runtimes by
+   * @return the next available server time for the Server
+   */
+  public static int calcServerAvailableTime(Server s, List<Job> serverJobs, Resource utilisedResources, int reqCore,
+      int reqMem, int reqDisk, float runtimeScale) {
     // Divide the server jobs into running jobs and waiting jobs.
     List<Job> runningJobs;
     List<Job> waitingJobs;
 
     // If the server is booting, consider waiting jobs with a know start time as
     // running jobs.
-    if (s.getState().equals("booting")) {
+    if (s.getStateCode() == ServerState.BOOTING) {
       runningJobs = serverJobs.stream().filter(j -> j.getStartTime() >= 0).collect(Collectors.toList());
       waitingJobs = serverJobs.stream().filter(j -> j.getStartTime() == -1).collect(Collectors.toList());
     } else {
-      runningJobs = serverJobs.stream().filter(j -> j.getState() == 2).collect(Collectors.toList());
-      waitingJobs = serverJobs.stream().filter(j -> j.getState() == 1).collect(Collectors.toList());
+      runningJobs = serverJobs.stream().filter(j -> j.getState() == JobState.RUNNING).collect(Collectors.toList());
+      waitingJobs = serverJobs.stream().filter(j -> j.getState() == JobState.WAITING).collect(Collectors.toList());
     }
 
     // Sort running jobs by job end time.
-    runningJobs.sort((j1, j2) -> Integer.valueOf(j1.getEndTime()).compareTo(j2.getEndTime()));
+    runningJobs.sort((j1, j2) -> Integer.valueOf(j1.getEndTime(runtimeScale))
+        .compareTo(j2.getEndTime(runtimeScale)));
     // Sort waiting jobs by id (order of submission).
     waitingJobs.sort((j1, j2) -> Integer.valueOf(j1.getID()).compareTo(j2.getID()));
 
-    // Get the current available resources of the server.
-    Resource utilisedResources = calcServerUtilisation(s);
     int availableCores = utilisedResources.getAvailableCores();
     int availableMem = utilisedResources.getAvailableMem();
     int availableDisk = utilisedResources.getAvailableDisk();
@@ -268,11 +1028,16 @@ public class DSClient {
     // Iterate through the server jobs until there is enough available resources to
     // satisfy the requirement.
     while (!waitingJobs.isEmpty() || (availableCores < reqCore || availableMem < reqMem || availableDisk < reqDisk)) {
+      // Stop if no running job is left to free resources, as when the job list
+      // doesn't match the state of the server.
+      if (runningJobs.isEmpty()) {
+        break;
+      }
       // Remove the first job to finish from the list of running jobs and update
       // available resources.
       Job finishedJob = runningJobs.remove(0);
       // Update the time to the removed job's end time.
-      time = finishedJob.getEndTime();
+      time = finishedJob.getEndTime(runtimeScale);
       availableCores += finishedJob.getCore();
       availableMem += finishedJob.getMemory();
       availableDisk += finishedJob.getDisk();
@@ -283,7 +1048,7 @@ public class DSClient {
           && waitingJobs.get(0).getMemory() <= availableMem && waitingJobs.get(0).getDisk() <= availableDisk) {
         Job nextJob = waitingJobs.remove(0);
 
-        nextJob.setState(2);
+        nextJob.setState(JobState.RUNNING);
         nextJob.setStartTime(time);
 
         runningJobs.add(nextJob);
@@ -299,7 +1064,8 @@ public class DSClient {
       // If a waiting job was added to the running jobs list, resort the list by job
       // end time.
       if (addRunJob) {
-        runningJobs.sort((j1, j2) -> Integer.valueOf(j1.getEndTime()).compareTo(j2.getEndTime()));
+        runningJobs.sort((j1, j2) -> Integer.valueOf(j1.getEndTime(runtimeScale))
+            .compareTo(j2.getEndTime(runtimeScale)));
       }
     }
 
@@ -308,7 +1074,9 @@ public class DSClient {
   }
 
   /**
-   * Get the jobs assigned to a server from ds-sim using the 'LSTJ' command.
+   * Get the jobs assigned to a server from ds-sim using the 'LSTJ' command. The
+   * Jobs are taken from the job pool and are only valid until the pool is reset
+   * for the next scheduling decision.
    * 
    * @param s the Server to get the assigned jobs for
    * @return a List of Jobs assigned to the Server
@@ -320,17 +1088,16 @@ public class DSClient {
       // Send 'LSTJ' to the ds-server and retrieve the list of jobs scheduled to the server.
       this.write("LSTJ " + s.getType() + " " + s.getID());
       this.read();
-      this.write("OK");
+      this.writeOk();
 
-      // Create a new Job object for each retrieved job and add it to the List.
-      String jobString = this.read();
-      while (!jobString.equals(".")) {
-        Job j = new Job(jobString);
+      // Fill a pooled Job object for each retrieved job and add it to the List.
+      Job j = this.readJob();
+      while (j != null) {
         serverJobs.add(j);
 
         // Complete the communication with ds-server.
-        this.write("OK");
-        jobString = this.read();
+        this.writeOk();
+        j = this.readJob();
       }
 
     } catch (IOException e) {
@@ -340,6 +1107,27 @@ public class DSClient {
     return serverJobs;
   }
 
+  /**
+   * Reads the next line of an 'LSTJ' job list into a pooled Job. Unless the
+   * messages are pipelined or recorded, the job is parsed straight from the
+   * bytes of the line, without decoding it into a String.
+   * 
+   * @return the pooled Job, or null at the end of the job list
+   * @throws IOException
+   */
+  private Job readJob() throws IOException {
+    if (lines == null || recorder != null) {
+      String jobString = this.read();
+      return jobString == null || jobString.equals(".") ? null : jobPool.acquire(jobString);
+    }
+
+    if (!lines.readLine()) {
+      return null;
+    }
+    planner.received(lines.length());
+    return lines.matches(".") ? null : jobPool.acquire(lines.buffer(), lines.length());
+  }
+
   /**
    * Terminates the specified Server using the 'TERM' command.
    * 
@@ -350,6 +1138,16 @@ public class DSClient {
       // Send 'TERM' to the ds-server and terminate the server.
       this.write("TERM " + s.getType() + " " + s.getID());
       this.read();
+      planner.terminated(s);
+      if (telemetry != null) {
+        telemetry.terminated(s);
+      }
+      if (shadow != null) {
+        shadow.getModel().terminated(s.getTypeCode(), s.getID());
+      }
+      if (stats != null) {
+        stats.terminated(s.getTypeCode(), s.getID());
+      }
 
     } catch (IOException e) {
       e.printStackTrace();
@@ -364,6 +1162,24 @@ public class DSClient {
    * @return available Server Resources
    */
   public Resource calcServerUtilisation(Server s) {
+    // If a Server is in a booting state, retrieve its jobs to determine the
+    // precise number of pending jobs.
+    List<Job> serverJobs = Collections.emptyList();
+    if (s.getStateCode() == ServerState.BOOTING && s.getWJobs() > 0) {
+      serverJobs = getServerJobs(s);
+    }
+    return calcServerUtilisation(s, serverJobs);
+  }
+
+  /**
+   * Calculates the utilisation of a Server from a job list already retrieved
+   * with 'LSTJ', without querying ds-server again.
+   * 
+   * @param s          the Server to calculate the utilisation of
+   * @param serverJobs the List of Jobs assigned to the Server
+   * @return a Resource object containing the Server utilisation
+   */
+  public Resource calcServerUtilisation(Server s, List<Job> serverJobs) {
     int availableCores = s.getCore();
     int availableMem = s.getMem();
     int availableDisk = s.getDisk();
@@ -371,10 +1187,9 @@ public class DSClient {
 
     // If a Server is in a booting state, recalculate the waiting jobs to determine
     // the precise number of pending jobs.
-    if (s.getState().equals("booting") && pendingJobs > 0) {
-      List<Job> serverJobs = getServerJobs(s);
+    if (s.getStateCode() == ServerState.BOOTING && pendingJobs > 0) {
       for (Job job : serverJobs) {
-        if (job.getState() == 1 && job.getStartTime() != -1) {
+        if (job.getState() == JobState.WAITING && job.getStartTime() != -1) {
           pendingJobs--;
         }
       }
@@ -395,8 +1210,52 @@ public class DSClient {
    * @throws IOException
    */
   public Socket connect(int port, String user) throws UnknownHostException, IOException {
+    return connect(IP_ADDRESS, port, user);
+  }
+
+  /**
+   * Connects to a ds-server instance on the specified host and completes the
+   * authentication handshake.
+   * 
+   * @param host the host name or IP address that the ds-server instance is
+   *             running on
+   * @param port the port number that the ds-server instance is running on
+   * @param user the username to authenticate with to ds-server
+   * @return a Socket object containing the connection to the ds-server
+   * @throws UnknownHostException
+   * @throws IOException
+   */
+  public Socket connect(String host, int port, String user) throws UnknownHostException, IOException {
+    // If configured, pre-touch the parsing and scheduling paths before the session
+    // starts.
+    if (warmUp) {
+      warmUp();
+    }
+
+    // If configured, start recording the session transcript.
+    if (recordPath != null) {
+      recorder = new TranscriptRecorder(recordPath, useXMLParser ? systemXmlPath : null);
+    }
+
+    // If configured, start recording the scheduled jobs.
+    if (historyPath != null) {
+      history = JobHistory.create(historyPath);
+    }
+
     // Connect to the ds-server instance.
-    this.DSServer = new Socket(IP_ADDRESS, port);
+    this.DSServer = new Socket(host, port);
+    this.out = DSServer.getOutputStream();
+
+    // If configured, start the dedicated I/O thread reading ds-server messages.
+    // Disable Nagle's algorithm so that a pipelined message is not held back
+    // until the previous one is acknowledged.
+    if (pipelineIO) {
+      DSServer.setTcpNoDelay(true);
+      reader = new MessageReader(DSServer.getInputStream());
+      reader.start();
+    } else {
+      lines = new LineReader(DSServer.getInputStream());
+    }
 
     // Complete the handshake.
     this.write("HELO");
@@ -404,6 +1263,11 @@ public class DSClient {
     this.write("AUTH " + user);
     this.read();
 
+    // If configured, expose the session telemetry over JMX.
+    if (telemetry != null) {
+      telemetry.register(host, port);
+    }
+
     return DSServer;
   }
 
@@ -424,19 +1288,14 @@ public class DSClient {
    * 
    */
   public List<Server> decideGetServers() {
-    String filepath = null; // Filepath to ds-system.xml
     List<Server> servers = null; // Server list to be returned when populated
 
     if (!useXMLParser) {
       // Call own method to retrieve server list by GETS All request sent to ds-server
       servers = this.getServers();
     } else {
-      // Get the filepath of ds-system.xml
-      filepath = XMLParser.getFilePath();
-
-      // Use XMLParser to return list of servers
-      XMLParser xmlParser = new XMLParser(filepath);
-      servers = xmlParser.getServers();
+      // Use the server catalog parsed from ds-system.xml, shared between sessions
+      servers = XMLParser.getCatalog(systemXmlPath);
       System.err.println("Using XMLParser");
     }
     return servers;
@@ -463,7 +1322,7 @@ public class DSClient {
       String data[] = resp.split(" ");
       int lines = Integer.parseInt(data[1]);
 
-      this.write("OK");
+      this.writeOk();
 
       // Create a new Server object for each retrieved server and add it to the List.
       for (int i = 0; i < lines; i++) {
@@ -472,7 +1331,44 @@ public class DSClient {
       }
 
       // Complete the communication with ds-server.
-      this.write("OK");
+      this.writeOk();
+      this.read();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    return servers;
+  }
+
+  /**
+   * Retrieves the list of Servers with sufficient available resources for a job
+   * on ds-server using the 'GETS Avail' command.
+   * 
+   * @return a List of Server objects available on ds-server, which may be empty
+   */
+  public List<Server> getAvailServers(int core, int mem, int disk) {
+    List<Server> servers = new ArrayList<Server>();
+
+    try {
+      // Send 'GETS Avail' to the ds-server and retrieve the list of servers.
+      this.write("GETS Avail " + core + " " + mem + " " + disk);
+
+      String resp = this.read();
+      String data[] = resp.split(" ");
+      int lines = Integer.parseInt(data[1]);
+
+      this.writeOk();
+
+      // Create a new Server object for each retrieved server and add it to the List.
+      for (int i = 0; i < lines; i++) {
+        servers.add(new Server(this.read()));
+      }
+
+      // Complete the communication with ds-server. When there are no servers,
+      // ds-server ends the response without waiting for another 'OK'.
+      if (lines > 0) {
+        this.writeOk();
+      }
       this.read();
     } catch (IOException e) {
       e.printStackTrace();
@@ -500,7 +1396,7 @@ public class DSClient {
       String data[] = resp.split(" ");
       int lines = Integer.parseInt(data[1]);
 
-      this.write("OK");
+      this.writeOk();
 
       // Create a new Server object for each retrieved server and add it to the List.
       for (int i = 0; i < lines; i++) {
@@ -509,7 +1405,7 @@ public class DSClient {
       }
 
       // Complete the communication with ds-server.
-      this.write("OK");
+      this.writeOk();
       this.read();
     } catch (IOException e) {
       e.printStackTrace();
@@ -522,6 +1418,12 @@ public class DSClient {
    * Sends 'REDY' to the server until the server sends a job to schedule (denoted
    * by either 'JOBN' or 'JOBP') and parses the server response into a Job object.
    * 
+   * If pipelining, 'REDY' is sent as soon as a status message is read, so that
+   * the status is applied to the local state while the next message is in
+   * flight. This is not done for a job completion when idle servers are
+   * terminated, as the 'LSTJ' of the server must see the state before the next
+   * event.
+   * 
    * @return a Job object containing the attributes of the job sent by the server
    *         for scheduling. or null if the server returns 'NONE' or an unexpected
    *         reply.
@@ -530,35 +1432,115 @@ public class DSClient {
     Job j = null;
 
     try {
-      // Send 'REDY' to the ds-server to request for a new job.
-      this.write("REDY");
+      // Send 'REDY' to the ds-server to request for a new job, unless it was sent
+      // ahead with the last 'SCHD'.
+      if (!readySent) {
+        this.write("REDY");
+      }
+      readySent = false;
 
-      // Read the ds-server response and extract the response message type.
+      // Read the ds-server response.
       String resp = this.read();
-      String type = resp.split(" ")[0];
 
       // If the response is a job/server status message, continue sending 'REDY' until
       // no more status messages are received.
-      while (type.equals("JCPL") || type.equals("RESF") || type.equals("RESR")) {
+      while (resp.startsWith("JCPL ") || resp.startsWith("RESF ") || resp.startsWith("RESR ")) {
+        // Parse the fields of the status message once: 'JCPL time jobID type
+        // serverID', or 'RESF/RESR type serverID time'.
+        boolean completed = resp.startsWith("JCPL"), failed = resp.startsWith("RESF");
+        int time, jobID = -1, serverType, serverID;
+        int start = 5;
+        int end = fieldEnd(resp, start);
+        if (completed) {
+          time = Integer.parseInt(resp, start, end, 10);
+          end = fieldEnd(resp, start = end + 1);
+          jobID = Integer.parseInt(resp, start, end, 10);
+          end = fieldEnd(resp, start = end + 1);
+          serverType = ServerType.intern(resp, start, end);
+          end = fieldEnd(resp, start = end + 1);
+          serverID = Integer.parseInt(resp, start, end, 10);
+        } else {
+          serverType = ServerType.intern(resp, start, end);
+          end = fieldEnd(resp, start = end + 1);
+          serverID = Integer.parseInt(resp, start, end, 10);
+          end = fieldEnd(resp, start = end + 1);
+          time = Integer.parseInt(resp, start, end, 10);
+        }
+
+        // If pipelining, ask for the next message before applying the status.
+        boolean requested = reader != null && !(terminateIdleServers && completed);
+        if (requested) {
+          this.write("REDY");
+        }
+
+        if (stats != null && completed) {
+          stats.completed(time, jobID);
+        }
         // If the program is configured to terminate idle servers and a job has
         // completed, verify if the server on which the job completed is not now idle,
         // and terminate it if it is.
-        if (terminateIdleServers && type.equals("JCPL")) {
-          String serverType = resp.split(" ")[3];
-          int serverID = Integer.parseInt(resp.split(" ")[4]);
-          Server s = new Server(serverType, serverID);
-          if (getServerJobs(s).isEmpty()) {
+        if (terminateIdleServers && completed) {
+          Server s = new Server(ServerType.name(serverType), serverID);
+          // Keep idle servers of the types that earlier sessions had to reboot
+          // often.
+          if ((stats == null || !stats.keepsIdle(serverType)) && getServerJobs(s).isEmpty()) {
             terminateServer(s);
           }
         }
-        this.write("REDY");
+        // Apply the job completion, server failure or recovery to the local model of
+        // the query planner.
+        if (completed) {
+          planner.completed(jobID, serverType, serverID);
+        } else {
+          planner.serverChanged(!failed);
+          // Track the servers that failed until they recover. Sampling always leaves
+          // them out, as their job lists don't show the failure, and fast re-placement
+          // also leaves them out of the capable servers.
+          long key = serverKey(serverType, serverID);
+          if (failed) {
+            failedServers.add(key);
+          } else {
+            failedServers.remove(key);
+          }
+          if (telemetry != null && failed) {
+            telemetry.failed(time, serverType, serverID);
+          } else if (telemetry != null) {
+            telemetry.recovered(time, serverType, serverID);
+          }
+          if (shadow != null && failed) {
+            shadow.getModel().failed(serverType, serverID);
+          } else if (shadow != null) {
+            shadow.getModel().recovered(serverType, serverID);
+          }
+        }
+        // Any server change ends a burst of resubmitted jobs.
+        burst.end();
+        // If recording the job history, record the completion time of the job.
+        if (history != null && completed) {
+          history.completed(jobID, time);
+        }
+        if (telemetry != null && completed) {
+          telemetry.completed(time, serverType, serverID);
+        }
+        if (shadow != null && completed) {
+          shadow.getModel().completed(jobID, serverType, serverID, time);
+        }
+        if (!requested) {
+          this.write("REDY");
+        }
         resp = this.read();
-        type = resp.split(" ")[0];
       }
 
       // If a job is received create a new Job object for it.
-      if (type.equals("JOBN") || type.equals("JOBP")) {
+      if (resp.startsWith("JOBN ") || resp.startsWith("JOBP ")) {
         j = new Job(resp);
+        // A resubmitted job failed on the server it was scheduled to.
+        if (history != null && j.isResubmitted()) {
+          history.failed(j.getID(), j.getSubmitTime());
+        }
+        if (telemetry != null) {
+          telemetry.received(j);
+        }
         // Otherwise, if 'NONE' is received (no more jobs to schedule), return null
         // (disconnect).
       } else if (resp.equals("NONE")) {
@@ -587,7 +1569,45 @@ public class DSClient {
       // Construct the 'SCHD' scheduling message to send to the ds-server with the job
       // ID and server type and ID information.
       this.write("SCHD " + j.getID() + " " + s.getType() + " " + s.getID());
-      this.read();
+      if (firstScheduleTime == 0) {
+        firstScheduleTime = System.currentTimeMillis();
+      }
+
+      // If pipelining, leave the acknowledgement in flight to be consumed by the
+      // next read, and ask for the next job right away, so that the updates of the
+      // local state below overlap with both round trips.
+      if (reader != null) {
+        pendingAcks++;
+        this.write("REDY");
+        readySent = true;
+      }
+
+      // Apply the job to the local model of the query planner.
+      if (planQueries) {
+        planner.dispatched(j, s);
+      }
+
+      // If recording the job history, record the decision with its predicted start
+      // and end times.
+      if (history != null) {
+        history.scheduled(j.getID(), j.getSubmitTime(), s.getTypeCode(), s.getID(), predictedStart,
+            predictedStart + j.getEstRuntime());
+      }
+      if (telemetry != null) {
+        telemetry.dispatched(j, s, predictedStart);
+      }
+      if (shadow != null) {
+        shadow.getModel().dispatched(j, s.getTypeCode(), s.getID(), j.getSubmitTime());
+      }
+      if (stats != null) {
+        stats.dispatched(j, s, predictedStart == j.getSubmitTime()
+            && (s.getStateCode() == ServerState.IDLE || s.getStateCode() == ServerState.ACTIVE));
+      }
+
+      if (reader == null) {
+        this.read();
+      }
+      scheduledJobs++;
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -603,8 +1623,41 @@ public class DSClient {
       try {
         this.write("QUIT");
         this.read();
-        // After quitting, close the Socket connection.
+        // After quitting, close the Socket connection, the transcript and the job
+        // history.
         DSServer.close();
+        if (recorder != null) {
+          recorder.close();
+        }
+        if (history != null) {
+          history.close();
+        }
+        if (firstScheduleTime > 0) {
+          System.err.println("Startup: first SCHD sent " + (firstScheduleTime
+              - ManagementFactory.getRuntimeMXBean().getStartTime()) + " ms after the JVM started");
+        }
+        System.err.println("Queries: " + planner);
+        if (fastReplacement) {
+          System.err.println("Resubmissions: " + burst);
+        }
+        if (telemetry != null) {
+          System.err.println("Telemetry: " + telemetry);
+          telemetry.unregister();
+        }
+        if (sampleSize > 0) {
+          System.err.printf("Sampling: %d servers per job, %.1f round trips per job%n", sampleSize,
+              (double) roundTrips / Math.max(1, scheduledJobs));
+        }
+        if (stats != null) {
+          stats.save();
+        }
+        if (shadow != null) {
+          System.err.println("Shadow: " + shadow);
+          shadow.writeCsv(shadowPath);
+        }
+        if (timeBudget > 0 || tripBudget > 0) {
+          System.err.println("Budget: search cut short in " + budgetCutoffs + " of " + scheduledJobs + " decisions");
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -613,17 +1666,45 @@ public class DSClient {
 
   /**
    * Read a line of text from the connected ds-server input stream. Requires
-   * ds-server to be run with the '-n' parameter.
+   * ds-server to be run with the '-n' parameter. If pipelining, the message is
+   * taken from the I/O thread after consuming any acknowledgements still in
+   * flight.
    * 
    * @return a String containing the line of text sent by ds-server
    * @throws IOException
    */
-  @SuppressWarnings("deprecation")
   public String read() throws IOException {
-    // Retrieve the Data input stream of the Socket connection to ds-server.
-    DataInputStream in = new DataInputStream(DSServer.getInputStream());
-    // Use the readLine method to read a line of text sent by ds-server.
-    return in.readLine();
+    String message;
+    if (reader != null) {
+      // Consume the acknowledgements of the pipelined messages, which ds-server
+      // sends before the reply to the most recent message.
+      while (pendingAcks > 0) {
+        String ack = reader.take();
+        pendingAcks--;
+        if (recorder != null) {
+          recorder.received(ack);
+        }
+        if (ack != null) {
+          planner.received(ack);
+        }
+        if (!"OK".equals(ack)) {
+          System.err.println("Unexpected acknowledgement from server: '" + ack + "'.");
+        }
+      }
+      message = reader.take();
+    } else {
+      // Read a line of text sent by ds-server.
+      message = lines.readLine() ? lines.toString() : null;
+    }
+
+    // If recording, add the message to the session transcript.
+    if (recorder != null) {
+      recorder.received(message);
+    }
+    if (message != null) {
+      planner.received(message);
+    }
+    return message;
   }
 
   /**
@@ -636,12 +1717,35 @@ public class DSClient {
    * @throws IOException
    */
   public void write(String message) throws IOException {
+    // If recording, add the message to the session transcript.
+    if (recorder != null) {
+      recorder.sent(message);
+    }
+
     // Append a new line character '\n' to the provided message to comply with the
     // ds-server running with the '-n' parameter.
     message = message + "\n";
     // Convert the message String to bytes and send the message to ds-server.
-    DSServer.getOutputStream().write(message.getBytes());
-    DSServer.getOutputStream().flush();
+    out.write(message.getBytes());
+    out.flush();
+    roundTrips++;
+  }
+
+  /**
+   * Sends the 'OK' acknowledgement to the connected ds-server from a
+   * preallocated buffer, as for each line of a 'GETS' or 'LSTJ' reply.
+   * 
+   * @throws IOException
+   */
+  public void writeOk() throws IOException {
+    // If recording, add the message to the session transcript.
+    if (recorder != null) {
+      recorder.sent("OK");
+    }
+
+    out.write(OK);
+    out.flush();
+    roundTrips++;
   }
 
   /**
@@ -3,6 +3,7 @@
  */
 public class Job {
   private int ID, state, submitTime, startTime, estRuntime, core, memory, disk;
+  private boolean resubmitted;
 
   /**
    * Constructs a job object from string
@@ -11,29 +12,157 @@ public class Job {
    *          character
    */
   public Job(String s) {
-    String[] parsed = s.split(" ");
+    parse(s);
+  }
 
-    if (parsed[0].equals("JOBN")) {
-      submitTime = Integer.parseInt(parsed[1]);
-      ID = Integer.parseInt(parsed[2]);
-      estRuntime = Integer.parseInt(parsed[3]);
-      core = Integer.parseInt(parsed[4]);
-      memory = Integer.parseInt(parsed[5]);
-      disk = Integer.parseInt(parsed[6]);
+  /**
+   * Constructs an empty job object, to be filled by parse(). Used by the JobPool.
+   */
+  Job() {
+  }
+
+  /**
+   * Constructs a job object as 'LSTJ' lists it, from its fields.
+   * 
+   * @param ID         the job ID
+   * @param state      the JobState code
+   * @param startTime  the start time, or -1 if the job has not started
+   * @param estRuntime the estimated runtime
+   * @param core       the required cores
+   * @param memory     the required memory
+   * @param disk       the required disk
+   */
+  Job(int ID, int state, int startTime, int estRuntime, int core, int memory, int disk) {
+    this.ID = ID;
+    this.state = state;
+    this.submitTime = -1;
+    this.startTime = startTime;
+    this.estRuntime = estRuntime;
+    this.core = core;
+    this.memory = memory;
+    this.disk = disk;
+  }
 
-      state = 0;
+  /**
+   * Sets the job fields from a string, so that job objects can be reused. The
+   * fields are parsed in place without allocating.
+   * 
+   * @param s input string with job fields delimited by the space character
+   */
+  public void parse(String s) {
+    int start = 0;
+    int end = fieldEnd(s, start);
+
+    // Jobs resubmitted after a server failure ('JOBP') have the same fields as new
+    // jobs ('JOBN').
+    resubmitted = s.startsWith("JOBP");
+    if (s.startsWith("JOBN") || resubmitted) {
+      end = fieldEnd(s, start = end + 1);
+      submitTime = Integer.parseInt(s, start, end, 10);
+      end = fieldEnd(s, start = end + 1);
+      ID = Integer.parseInt(s, start, end, 10);
+
+      state = JobState.SUBMITTED;
       startTime = -1;
     } else {
-      ID = Integer.parseInt(parsed[0]);
-      state = Integer.parseInt(parsed[1]);
-      startTime = Integer.parseInt(parsed[2]);
-      estRuntime = Integer.parseInt(parsed[3]);
-      core = Integer.parseInt(parsed[4]);
-      memory = Integer.parseInt(parsed[5]);
-      disk = Integer.parseInt(parsed[6]);
+      ID = Integer.parseInt(s, start, end, 10);
+      end = fieldEnd(s, start = end + 1);
+      state = Integer.parseInt(s, start, end, 10);
+      end = fieldEnd(s, start = end + 1);
+      startTime = Integer.parseInt(s, start, end, 10);
 
       submitTime = -1;
     }
+
+    end = fieldEnd(s, start = end + 1);
+    estRuntime = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    core = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    memory = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    disk = Integer.parseInt(s, start, end, 10);
+  }
+
+  /**
+   * Sets the job fields from the bytes of an 'LSTJ' job line, so that the job
+   * lists can be read without decoding each line into a String.
+   * 
+   * @param b      the bytes of the job fields delimited by the space character
+   * @param length the number of bytes of the line
+   */
+  public void parse(byte[] b, int length) {
+    int field = 0, value = 0;
+    boolean negative = false;
+    for (int i = 0; i <= length; i++) {
+      if (i < length && b[i] != ' ') {
+        if (b[i] == '-') {
+          negative = true;
+        } else if (b[i] >= '0' && b[i] <= '9') {
+          value = value * 10 + (b[i] - '0');
+        } else {
+          throw new NumberFormatException("Invalid job line '" + new String(b, 0, length) + "'");
+        }
+        continue;
+      }
+
+      // Store the field ended by the space or the end of the line.
+      setField(field++, negative ? -value : value);
+      value = 0;
+      negative = false;
+    }
+    if (field != 7) {
+      throw new NumberFormatException("Invalid job line '" + new String(b, 0, length) + "'");
+    }
+
+    submitTime = -1;
+    resubmitted = false;
+  }
+
+  /**
+   * Sets a field of an 'LSTJ' job line by its position.
+   * 
+   * @param field the position of the field in the line
+   * @param value the value of the field
+   */
+  private void setField(int field, int value) {
+    switch (field) {
+      case 0:
+        ID = value;
+        break;
+      case 1:
+        state = value;
+        break;
+      case 2:
+        startTime = value;
+        break;
+      case 3:
+        estRuntime = value;
+        break;
+      case 4:
+        core = value;
+        break;
+      case 5:
+        memory = value;
+        break;
+      case 6:
+        disk = value;
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Finds the end of a space delimited field.
+   * 
+   * @param s     the string holding the fields
+   * @param start the index of the first character of the field
+   * @return the index after the last character of the field
+   */
+  private static int fieldEnd(String s, int start) {
+    int end = s.indexOf(' ', start);
+    return end == -1 ? s.length() : end;
   }
 
   /**
@@ -64,10 +193,24 @@ public class Job {
     return this.ID;
   }
 
+  /**
+   * Getter function for the job state
+   * 
+   * @return JobState code in int format
+   */
   public int getState() {
     return this.state;
   }
 
+  /**
+   * Checks whether the job was resubmitted after the failure of its server.
+   * 
+   * @return true if the job was received with 'JOBP'
+   */
+  public boolean isResubmitted() {
+    return this.resubmitted;
+  }
+
   public void setState(int state) {
     this.state = state;
   }
@@ -120,5 +263,18 @@ public class Job {
     if (startTime == -1) return -1;
 
     return startTime + estRuntime;
-  }  
+  }
+
+  /**
+   * Gets the end time of the job with its estimated runtime scaled, as by the
+   * ratio of the observed to the estimated runtimes.
+   * 
+   * @param runtimeScale the factor to scale the estimated runtime by
+   * @return the scaled end time, or -1 if the job has not started
+   */
+  public int getEndTime(float runtimeScale) {
+    if (startTime == -1) return -1;
+
+    return startTime + Math.round(estRuntime * runtimeScale);
+  }
 }
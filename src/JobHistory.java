@@ -0,0 +1,319 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Append-only, columnar store of the jobs scheduled in a session, kept in a
+ * memory-mapped file outside the Java heap. Each row records a scheduling
+ * decision: the job ID, submit time, chosen server, predicted start and end
+ * times, and later the actual completion time from 'JCPL' or the time the job
+ * failed and was resubmitted with 'JOBP'.
+ *
+ * The file holds a header followed by fixed size segments of SEGMENT_ROWS rows.
+ * Each segment stores its rows column by column, so analysing one column only
+ * touches the pages of that column. Segments are mapped as the store grows, and
+ * the row count in the header is updated with every row, so the rows written
+ * before a crash can still be read. The server type names are written after
+ * the last segment when the store is closed.
+ *
+ * Usage: java JobHistory file -> Prints a summary of the prediction error of a
+ * job history file.
+ */
+public class JobHistory implements Closeable {
+  public final static int MAGIC = 0x44534A48; // "DSJH"
+  public final static int VERSION = 1;
+  public final static int SEGMENT_ROWS = 1 << 16;
+
+  // Columns of a segment
+  private final static int JOB_ID = 0, SUBMIT_TIME = 1, SERVER_TYPE = 2, SERVER_ID = 3, PREDICTED_START = 4,
+      PREDICTED_END = 5, COMPLETION_TIME = 6, FAILURE_TIME = 7, NUM_COLUMNS = 8;
+  private final static int HEADER_BYTES = 64;
+  private final static long SEGMENT_BYTES = (long) NUM_COLUMNS * SEGMENT_ROWS * Integer.BYTES;
+  // Header fields
+  private final static int ROWS_OFFSET = 8, TYPES_OFFSET = 16;
+
+  private final FileChannel channel;
+  private final boolean writable;
+  private final MappedByteBuffer header;
+  private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+  private int rows;
+  private String[] typeNames;
+  // The latest row of each job ID, to record its completion or failure.
+  private int[] rowOfJob = new int[0];
+
+  private JobHistory(Path path, boolean writable) throws IOException {
+    this.writable = writable;
+    if (writable) {
+      this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+      header.putInt(0, MAGIC);
+      header.putInt(4, VERSION);
+      header.putInt(12, SEGMENT_ROWS);
+    } else {
+      this.channel = FileChannel.open(path, StandardOpenOption.READ);
+      this.header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(12) != SEGMENT_ROWS) {
+        channel.close();
+        throw new IOException("Not a job history file: " + path);
+      }
+      this.rows = header.getInt(ROWS_OFFSET);
+      for (int k = 0; k * (long) SEGMENT_ROWS < rows; k++) {
+        segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentOffset(k), SEGMENT_BYTES));
+      }
+      this.typeNames = readTypeNames(header.getLong(TYPES_OFFSET));
+    }
+  }
+
+  /**
+   * Creates an empty job history file to record a session to, replacing any
+   * existing file.
+   *
+   * @param path the path of the job history file
+   * @return the JobHistory to append rows to
+   * @throws IOException
+   */
+  public static JobHistory create(String path) throws IOException {
+    return new JobHistory(Paths.get(path), true);
+  }
+
+  /**
+   * Opens a job history file for reading.
+   *
+   * @param path the path of the job history file
+   * @return the read-only JobHistory
+   * @throws IOException if the file can't be read or isn't a job history file
+   */
+  public static JobHistory open(String path) throws IOException {
+    return new JobHistory(Paths.get(path), false);
+  }
+
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      System.err.println("Usage: JobHistory file");
+      System.exit(1);
+    }
+
+    try (JobHistory history = JobHistory.open(args[0])) {
+      int completed = 0, failed = 0, late = 0;
+      long absError = 0, error = 0;
+      for (int row = 0; row < history.size(); row++) {
+        if (history.getFailureTime(row) >= 0) {
+          failed++;
+        } else if (history.getCompletionTime(row) >= 0) {
+          // Compare the predicted end time with the actual completion time.
+          int difference = history.getCompletionTime(row) - history.getPredictedEnd(row);
+          completed++;
+          error += difference;
+          absError += Math.abs(difference);
+          if (difference > 0) {
+            late++;
+          }
+        }
+      }
+
+      System.out.println("Rows: " + history.size() + ", completed: " + completed + ", failed: " + failed);
+      if (completed > 0) {
+        System.out.printf("Mean end time error: %.2f s, mean absolute error: %.2f s, completed late: %.2f%%%n",
+            (double) error / completed, (double) absError / completed, 100.0 * late / completed);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Appends a scheduling decision.
+   *
+   * @param jobID          the ID of the scheduled job
+   * @param submitTime     the submit time of the job
+   * @param serverType     the ServerType code of the chosen server
+   * @param serverID       the ID of the chosen server
+   * @param predictedStart the predicted start time of the job
+   * @param predictedEnd   the predicted end time of the job
+   */
+  public void scheduled(int jobID, int submitTime, int serverType, int serverID, int predictedStart,
+      int predictedEnd) {
+    int row = rows;
+    if (row % SEGMENT_ROWS == 0) {
+      addSegment();
+    }
+
+    put(row, JOB_ID, jobID);
+    put(row, SUBMIT_TIME, submitTime);
+    put(row, SERVER_TYPE, serverType);
+    put(row, SERVER_ID, serverID);
+    put(row, PREDICTED_START, predictedStart);
+    put(row, PREDICTED_END, predictedEnd);
+    put(row, COMPLETION_TIME, -1);
+    put(row, FAILURE_TIME, -1);
+
+    if (jobID >= rowOfJob.length) {
+      int length = Math.max(SEGMENT_ROWS, rowOfJob.length);
+      while (length <= jobID) {
+        length <<= 1;
+      }
+      int oldLength = rowOfJob.length;
+      rowOfJob = Arrays.copyOf(rowOfJob, length);
+      Arrays.fill(rowOfJob, oldLength, length, -1);
+    }
+    rowOfJob[jobID] = row;
+
+    rows = row + 1;
+    header.putInt(ROWS_OFFSET, rows);
+  }
+
+  /**
+   * Records the completion of a job, as reported by 'JCPL'.
+   *
+   * @param jobID the ID of the completed job
+   * @param time  the completion time
+   */
+  public void completed(int jobID, int time) {
+    int row = latestRow(jobID);
+    if (row >= 0) {
+      put(row, COMPLETION_TIME, time);
+    }
+  }
+
+  /**
+   * Records the failure of a job, when it is resubmitted with 'JOBP'.
+   *
+   * @param jobID the ID of the failed job
+   * @param time  the time the job was resubmitted
+   */
+  public void failed(int jobID, int time) {
+    int row = latestRow(jobID);
+    if (row >= 0 && get(row, FAILURE_TIME) < 0) {
+      put(row, FAILURE_TIME, time);
+    }
+  }
+
+  public int size() {
+    return this.rows;
+  }
+
+  public int getJobID(int row) {
+    return get(row, JOB_ID);
+  }
+
+  public int getSubmitTime(int row) {
+    return get(row, SUBMIT_TIME);
+  }
+
+  /**
+   * Gets the type of the server a row was scheduled to.
+   *
+   * @param row the row index
+   * @return the server type name
+   */
+  public String getServerType(int row) {
+    int code = get(row, SERVER_TYPE);
+    return code < typeNames.length ? typeNames[code] : "#" + code;
+  }
+
+  public int getServerID(int row) {
+    return get(row, SERVER_ID);
+  }
+
+  public int getPredictedStart(int row) {
+    return get(row, PREDICTED_START);
+  }
+
+  public int getPredictedEnd(int row) {
+    return get(row, PREDICTED_END);
+  }
+
+  /**
+   * Gets the actual completion time of a row.
+   *
+   * @param row the row index
+   * @return the completion time, or -1 if the job did not complete
+   */
+  public int getCompletionTime(int row) {
+    return get(row, COMPLETION_TIME);
+  }
+
+  /**
+   * Gets the failure time of a row.
+   *
+   * @param row the row index
+   * @return the time the job was resubmitted after a failure, or -1 if it did
+   *         not fail
+   */
+  public int getFailureTime(int row) {
+    return get(row, FAILURE_TIME);
+  }
+
+  /**
+   * Writes the server type names after the last segment and closes the file.
+   */
+  @Override
+  public void close() throws IOException {
+    if (writable) {
+      long typesOffset = segmentOffset(segments.size());
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeInt(ServerType.count());
+        for (int code = 0; code < ServerType.count(); code++) {
+          out.writeUTF(ServerType.name(code));
+        }
+      }
+      channel.write(ByteBuffer.wrap(bytes.toByteArray()), typesOffset);
+
+      header.putLong(TYPES_OFFSET, typesOffset);
+      header.force();
+      for (MappedByteBuffer segment : segments) {
+        segment.force();
+      }
+    }
+    channel.close();
+  }
+
+  private String[] readTypeNames(long typesOffset) throws IOException {
+    // The type names are missing if the session did not close the store.
+    if (typesOffset <= 0 || typesOffset >= channel.size()) {
+      return new String[0];
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - typesOffset));
+    channel.read(buffer, typesOffset);
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()))) {
+      String[] names = new String[in.readInt()];
+      for (int code = 0; code < names.length; code++) {
+        names[code] = in.readUTF();
+      }
+      return names;
+    }
+  }
+
+  private void addSegment() {
+    try {
+      segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segmentOffset(segments.size()), SEGMENT_BYTES));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private int latestRow(int jobID) {
+    return jobID >= 0 && jobID < rowOfJob.length ? rowOfJob[jobID] : -1;
+  }
+
+  private int get(int row, int column) {
+    return segments.get(row / SEGMENT_ROWS).getInt(cellOffset(row, column));
+  }
+
+  private void put(int row, int column, int value) {
+    segments.get(row / SEGMENT_ROWS).putInt(cellOffset(row, column), value);
+  }
+
+  private static int cellOffset(int row, int column) {
+    return (column * SEGMENT_ROWS + row % SEGMENT_ROWS) * Integer.BYTES;
+  }
+
+  private static long segmentOffset(int segment) {
+    return HEADER_BYTES + segment * SEGMENT_BYTES;
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Arena of reusable Job objects for the job lists retrieved with 'LSTJ'. The
+ * job lists are only needed for a single scheduling decision, so instead of
+ * allocating a Job for every line, the jobs are handed out from the pool and
+ * all of them are reclaimed at once when the pool is reset for the next
+ * decision. The pool only grows when a decision needs more jobs than any
+ * previous one.
+ *
+ * Jobs taken from the pool must not be kept past the next reset().
+ */
+public class JobPool {
+  private Job[] jobs = new Job[0];
+  private int used = 0;
+
+  /**
+   * Takes the next free job from the pool and fills it from a job string.
+   *
+   * @param s the job fields delimited by the space character
+   * @return the pooled Job
+   */
+  public Job acquire(String s) {
+    if (used == jobs.length) {
+      grow();
+    }
+    Job j = jobs[used++];
+    j.parse(s);
+    return j;
+  }
+
+  /**
+   * Takes the next free job from the pool and fills it from the bytes of an
+   * 'LSTJ' job line.
+   *
+   * @param b      the bytes of the job fields delimited by the space character
+   * @param length the number of bytes of the line
+   * @return the pooled Job
+   */
+  public Job acquire(byte[] b, int length) {
+    if (used == jobs.length) {
+      grow();
+    }
+    Job j = jobs[used++];
+    j.parse(b, length);
+    return j;
+  }
+
+  /**
+   * Reclaims every job taken from the pool.
+   */
+  public void reset() {
+    used = 0;
+  }
+
+  /**
+   * Gets the number of jobs taken since the last reset.
+   *
+   * @return the number of jobs in use
+   */
+  public int size() {
+    return this.used;
+  }
+
+  private void grow() {
+    Job[] grown = new Job[Math.max(64, jobs.length * 2)];
+    System.arraycopy(jobs, 0, grown, 0, jobs.length);
+    for (int i = jobs.length; i < grown.length; i++) {
+      grown[i] = new Job();
+    }
+    jobs = grown;
+  }
+}
@@ -0,0 +1,11 @@
+/**
+ * Codes for the job states, as reported by ds-server in 'LSTJ' responses.
+ */
+public final class JobState {
+  public final static int SUBMITTED = 0;
+  public final static int WAITING = 1;
+  public final static int RUNNING = 2;
+
+  private JobState() {
+  }
+}
@@ -0,0 +1,426 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TCP proxy between DSClient and ds-server that injects network latency,
+ * jitter and a bandwidth limit, to measure how the client throughput depends
+ * on the round trip time. Every message of the protocol is a blocking round
+ * trip, so the features saving round trips can be compared under realistic
+ * network conditions without a remote ds-server.
+ *
+ * Each direction of a connection delays the data it forwards by half the round
+ * trip time plus a random jitter, and serialises it at the bandwidth limit,
+ * keeping the order of the data like TCP. The proxy also watches the protocol:
+ * the decision latency of a job is the time from the job ('JOBN' or 'JOBP')
+ * arriving from ds-server to its 'SCHD' leaving for ds-server, which includes
+ * the delayed round trips the client made to decide.
+ *
+ * Usage: java LatencyProxy [--listen port] [--target host:port] [--rtt ms]
+ * [--jitter ms] [--bandwidth bytes/s] -> Runs the proxy until it is
+ * interrupted, printing the statistics of each session. DSClient connects to
+ * port 50000, so by default the proxy listens on port 50000 and forwards to a
+ * ds-server started with '-p 50001'.
+ *
+ * Usage: java LatencyProxy --sweep ms,ms,... [--server path] [--config file]
+ * [--port n] [--jitter ms] [--bandwidth bytes/s] [client options] -> Runs a
+ * DSClient session with the client options through the proxy at each round
+ * trip time, each against a new ds-server, and prints the jobs per second and
+ * decision latencies as a table.
+ */
+public class LatencyProxy implements Closeable {
+  private final static int BUFFER_BYTES = 8192;
+  private final static int CONNECT_ATTEMPTS = 50;
+  private final static long SERVER_EXIT_TIMEOUT_MS = 10000L;
+
+  private final String targetHost;
+  private final int targetPort;
+  private final long oneWayNanos, jitterNanos, bytesPerSecond;
+  private final ServerSocket listener;
+  private final Random random = new Random(1);
+  private final List<SessionStats> sessions = new CopyOnWriteArrayList<SessionStats>();
+  // Whether to print the statistics of each session when it closes.
+  private boolean printSessions = false;
+
+  /**
+   * The statistics of a session through the proxy.
+   */
+  public static class SessionStats {
+    private final long startTime = System.nanoTime();
+    private long endTime;
+    // The arrival times of the jobs waiting for their 'SCHD'.
+    private final Deque<Long> pendingJobs = new ArrayDeque<Long>();
+    private final List<Long> decisionNanos = new ArrayList<Long>();
+
+    synchronized void jobReceived(long time) {
+      pendingJobs.add(time);
+    }
+
+    synchronized void jobScheduled(long time) {
+      Long received = pendingJobs.poll();
+      if (received != null) {
+        decisionNanos.add(time - received);
+      }
+    }
+
+    synchronized void closed(long time) {
+      if (endTime == 0) {
+        endTime = time;
+      }
+    }
+
+    public synchronized int getJobs() {
+      return decisionNanos.size();
+    }
+
+    public synchronized double getWallSeconds() {
+      return ((endTime == 0 ? System.nanoTime() : endTime) - startTime) / 1e9;
+    }
+
+    public double getJobsPerSecond() {
+      double seconds = getWallSeconds();
+      return seconds > 0 ? getJobs() / seconds : 0;
+    }
+
+    public synchronized double getMeanDecisionMs() {
+      long sum = 0;
+      for (long nanos : decisionNanos) {
+        sum += nanos;
+      }
+      return decisionNanos.isEmpty() ? Double.NaN : sum / 1e6 / decisionNanos.size();
+    }
+
+    /**
+     * Gets a percentile of the decision latency.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the decision latency in milliseconds
+     */
+    public synchronized double getDecisionMs(double percentile) {
+      if (decisionNanos.isEmpty()) {
+        return Double.NaN;
+      }
+      long[] sorted = decisionNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+      int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1);
+      return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d jobs in %.2f s, %.1f jobs/s, decision latency mean %.2f ms, p50 %.2f ms, p95 %.2f ms",
+          getJobs(), getWallSeconds(), getJobsPerSecond(), getMeanDecisionMs(), getDecisionMs(50),
+          getDecisionMs(95));
+    }
+  }
+
+  // A chunk of data forwarded in one direction, and the time it is delivered.
+  private static class Chunk {
+    final byte[] data;
+    final long deliverAt;
+
+    Chunk(byte[] data, long deliverAt) {
+      this.data = data;
+      this.deliverAt = deliverAt;
+    }
+  }
+
+  /**
+   * Starts a proxy listening for DSClient connections.
+   *
+   * @param listenPort     the port to listen on
+   * @param targetHost     the host of ds-server
+   * @param targetPort     the port of ds-server
+   * @param rttMs          the round trip time to add, in milliseconds
+   * @param jitterMs       the maximum random delay added to each direction, in
+   *                       milliseconds
+   * @param bytesPerSecond the bandwidth of each direction, or 0 for no limit
+   * @throws IOException if the port can't be listened on
+   */
+  public LatencyProxy(int listenPort, String targetHost, int targetPort, double rttMs, double jitterMs,
+      long bytesPerSecond) throws IOException {
+    this.targetHost = targetHost;
+    this.targetPort = targetPort;
+    this.oneWayNanos = (long) (rttMs * 1e6 / 2);
+    this.jitterNanos = (long) (jitterMs * 1e6);
+    this.bytesPerSecond = bytesPerSecond;
+    this.listener = new ServerSocket();
+    listener.setReuseAddress(true);
+    listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), listenPort));
+
+    Thread acceptor = new Thread(this::acceptConnections, "LatencyProxy-accept");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public static void main(String[] args) {
+    int listenPort = 50000, port = 50100;
+    String target = "localhost:50001", serverPath = "./ds-server", configPath = null;
+    double jitterMs = 0, rttMs = 0;
+    long bandwidth = 0;
+    List<Double> sweep = null;
+    List<String> clientArgs = new ArrayList<String>();
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--listen")) {
+        listenPort = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--target")) {
+        target = args[++i];
+      } else if (args[i].equals("--rtt")) {
+        rttMs = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--jitter")) {
+        jitterMs = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("--bandwidth")) {
+        bandwidth = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--sweep")) {
+        sweep = new ArrayList<Double>();
+        for (String rtt : args[++i].split(",")) {
+          sweep.add(Double.parseDouble(rtt));
+        }
+      } else if (args[i].equals("--server")) {
+        serverPath = args[++i];
+      } else if (args[i].equals("--config")) {
+        configPath = args[++i];
+      } else if (args[i].equals("--port")) {
+        port = Integer.parseInt(args[++i]);
+      } else {
+        // Any other argument is a client option of the sweep, such as a value
+        // following a client flag.
+        clientArgs.add(args[i]);
+      }
+    }
+
+    try {
+      if (sweep == null) {
+        int colon = target.lastIndexOf(':');
+        LatencyProxy proxy = new LatencyProxy(listenPort, target.substring(0, colon),
+            Integer.parseInt(target.substring(colon + 1)), rttMs, jitterMs, bandwidth);
+        proxy.printSessions = true;
+        System.err.println("Forwarding port " + listenPort + " to " + target + " with " + rttMs + " ms RTT");
+        proxy.awaitClose();
+      } else {
+        File config = new File(configPath != null ? configPath : "configs/sample-configs/ds-sample-config05.xml");
+        System.out.println(formatTable(sweep(sweep, serverPath, config, port, jitterMs, bandwidth,
+            clientArgs.toArray(new String[0]))));
+      }
+    } catch (IOException | InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Runs a DSClient session through the proxy at each round trip time, each
+   * against a new ds-server in its own working directory.
+   *
+   * @param rtts       the round trip times to sweep, in milliseconds
+   * @param serverPath the ds-server executable
+   * @param config     the ds-sim configuration file to run
+   * @param port       the port of ds-server; the proxy listens on the next port
+   * @param jitterMs   the maximum random delay added to each direction
+   * @param bandwidth  the bandwidth of each direction, or 0 for no limit
+   * @param clientArgs the DSClient arguments
+   * @return the SessionStats of each round trip time, in sweep order
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public static Map<Double, SessionStats> sweep(List<Double> rtts, String serverPath, File config, int port,
+      double jitterMs, long bandwidth, String[] clientArgs) throws IOException, InterruptedException {
+    Map<Double, SessionStats> results = new LinkedHashMap<Double, SessionStats>();
+    ScenarioRunner runner = new ScenarioRunner(serverPath, 1, port);
+
+    for (double rtt : rtts) {
+      Path workDir = Files.createTempDirectory("ds-latency");
+      Process server = new ProcessBuilder(new File(serverPath).getAbsolutePath(), "-c", config.getAbsolutePath(), "-v",
+          "brief", "-n", "-p", Integer.toString(port)).directory(workDir.toFile()).redirectErrorStream(true)
+          .redirectOutput(workDir.resolve("server.log").toFile()).start();
+
+      try (LatencyProxy proxy = new LatencyProxy(port + 1, "localhost", port, rtt, jitterMs, bandwidth)) {
+        runner.runClient(workDir.resolve("ds-system.xml").toFile(), port + 1, clientArgs);
+        server.waitFor(SERVER_EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        SessionStats stats = proxy.getSessions().isEmpty() ? new SessionStats() : proxy.getSessions().get(0);
+        stats.closed(System.nanoTime());
+        results.put(rtt, stats);
+        System.err.println("RTT " + rtt + " ms: " + stats);
+      } finally {
+        server.destroy();
+        ScenarioRunner.deleteDirectory(workDir);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Formats the results of a sweep as a markdown table.
+   *
+   * @param results the SessionStats of each round trip time
+   * @return the formatted table
+   */
+  public static String formatTable(Map<Double, SessionStats> results) {
+    StringBuilder table = new StringBuilder();
+    table.append("| RTT (ms) | Jobs | Wall-time (s) | Jobs/s | Mean decision (ms) | p50 (ms) | p95 (ms) |\n");
+    table.append("|---|---|---|---|---|---|---|\n");
+    for (Map.Entry<Double, SessionStats> entry : results.entrySet()) {
+      SessionStats s = entry.getValue();
+      table.append(String.format("| %s | %d | %.2f | %.1f | %.2f | %.2f | %.2f |%n", entry.getKey(), s.getJobs(),
+          s.getWallSeconds(), s.getJobsPerSecond(), s.getMeanDecisionMs(), s.getDecisionMs(50),
+          s.getDecisionMs(95)));
+    }
+    return table.toString();
+  }
+
+  public List<SessionStats> getSessions() {
+    return this.sessions;
+  }
+
+  /**
+   * Waits until the proxy is closed.
+   *
+   * @throws InterruptedException
+   */
+  public void awaitClose() throws InterruptedException {
+    while (!listener.isClosed()) {
+      Thread.sleep(1000);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    listener.close();
+  }
+
+  private void acceptConnections() {
+    while (!listener.isClosed()) {
+      try {
+        Socket client = listener.accept();
+        Socket server = connectTarget();
+        client.setTcpNoDelay(true);
+        server.setTcpNoDelay(true);
+
+        SessionStats stats = new SessionStats();
+        sessions.add(stats);
+        forward(client, server, stats, true);
+        forward(server, client, stats, false);
+      } catch (IOException e) {
+        if (!listener.isClosed()) {
+          System.err.println("Proxy connection failed: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Connects to ds-server, retrying while it starts listening.
+   */
+  private Socket connectTarget() throws IOException {
+    for (int attempt = 0;; attempt++) {
+      try {
+        return new Socket(targetHost, targetPort);
+      } catch (ConnectException e) {
+        if (attempt >= CONNECT_ATTEMPTS) {
+          throw e;
+        }
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ie) {
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+
+  /**
+   * Forwards one direction of a connection with a reader thread, which
+   * timestamps the data and schedules its delivery, and a writer thread, which
+   * delivers it on time.
+   *
+   * @param from     the socket to read from
+   * @param to       the socket to write to
+   * @param stats    the statistics of the session
+   * @param upstream whether the direction is from DSClient to ds-server
+   */
+  private void forward(Socket from, Socket to, SessionStats stats, boolean upstream) throws IOException {
+    BlockingQueue<Chunk> queue = new LinkedBlockingQueue<Chunk>();
+    InputStream in = from.getInputStream();
+    OutputStream out = to.getOutputStream();
+    String direction = upstream ? "up" : "down";
+
+    Thread reader = new Thread(() -> {
+      byte[] buffer = new byte[BUFFER_BYTES];
+      // The first bytes of the current line, to recognise the messages.
+      byte[] line = new byte[4];
+      int lineLength = 0;
+      long linkFreeAt = 0, lastDelivery = 0;
+      try {
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+          long now = System.nanoTime();
+          for (int i = 0; i < n; i++) {
+            if (buffer[i] == '\n') {
+              lineLength = 0;
+            } else if (lineLength < line.length) {
+              line[lineLength++] = buffer[i];
+              if (lineLength == line.length) {
+                String command = new String(line, 0, line.length);
+                if (upstream && command.equals("SCHD")) {
+                  stats.jobScheduled(now);
+                } else if (!upstream && (command.equals("JOBN") || command.equals("JOBP"))) {
+                  stats.jobReceived(now);
+                }
+              }
+            }
+          }
+
+          // Serialise the data at the bandwidth limit, then delay it by the
+          // one-way latency and jitter, never overtaking earlier data.
+          long sendStart = Math.max(now, linkFreeAt);
+          linkFreeAt = sendStart + (bytesPerSecond > 0 ? n * 1000000000L / bytesPerSecond : 0);
+          long jitter;
+          synchronized (random) {
+            jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+          }
+          lastDelivery = Math.max(lastDelivery, linkFreeAt + oneWayNanos + jitter);
+          queue.put(new Chunk(Arrays.copyOf(buffer, n), lastDelivery));
+        }
+      } catch (IOException | InterruptedException e) {
+        // The connection was closed.
+      }
+      try {
+        queue.put(new Chunk(null, lastDelivery));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "LatencyProxy-" + direction + "-read");
+
+    Thread writer = new Thread(() -> {
+      try {
+        while (true) {
+          Chunk chunk = queue.take();
+          long wait;
+          while ((wait = chunk.deliverAt - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+          }
+          if (chunk.data == null) {
+            break;
+          }
+          out.write(chunk.data);
+          out.flush();
+        }
+        to.shutdownOutput();
+      } catch (IOException | InterruptedException e) {
+        // The connection was closed.
+      } finally {
+        stats.closed(System.nanoTime());
+        if (printSessions && !upstream) {
+          System.err.println("Session: " + stats);
+        }
+      }
+    }, "LatencyProxy-" + direction + "-write");
+
+    reader.setDaemon(true);
+    writer.setDaemon(true);
+    reader.start();
+    writer.start();
+  }
+}
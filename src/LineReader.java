@@ -0,0 +1,112 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the newline delimited messages sent by ds-server into a reusable byte
+ * buffer, so that messages which are parsed straight from the bytes, such as
+ * the lines of an 'LSTJ' job list, don't need a String each.
+ */
+public class LineReader {
+  private final static int BUFFER_SIZE = 8192;
+
+  private final InputStream in;
+  private final byte[] input = new byte[BUFFER_SIZE];
+  private int inputPos = 0, inputEnd = 0;
+  private byte[] line = new byte[256];
+  private int length = 0;
+
+  /**
+   * Constructs the reader for the input stream of a ds-server connection.
+   *
+   * @param inputStream the input stream of the Socket connection to ds-server
+   */
+  public LineReader(InputStream inputStream) {
+    this.in = inputStream;
+  }
+
+  /**
+   * Reads the next line into the line buffer, without its line terminator.
+   *
+   * @return true if a line was read, false at the end of the stream
+   * @throws IOException
+   */
+  public boolean readLine() throws IOException {
+    length = 0;
+    boolean read = false;
+    while (true) {
+      if (inputPos == inputEnd) {
+        inputEnd = in.read(input, 0, input.length);
+        inputPos = 0;
+        if (inputEnd <= 0) {
+          inputEnd = 0;
+          return read;
+        }
+      }
+
+      read = true;
+      byte b = input[inputPos++];
+      if (b == '\n') {
+        break;
+      }
+      if (length == line.length) {
+        byte[] grown = new byte[line.length * 2];
+        System.arraycopy(line, 0, grown, 0, length);
+        line = grown;
+      }
+      line[length++] = b;
+    }
+
+    // Drop the carriage return of a '\r\n' line terminator.
+    if (length > 0 && line[length - 1] == '\r') {
+      length--;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the bytes of the last line read. Only the first length() bytes are
+   * valid, and only until the next line is read.
+   *
+   * @return the line buffer
+   */
+  public byte[] buffer() {
+    return this.line;
+  }
+
+  /**
+   * Gets the length of the last line read.
+   *
+   * @return the number of bytes in the line
+   */
+  public int length() {
+    return this.length;
+  }
+
+  /**
+   * Checks whether the last line read is the given ASCII message.
+   *
+   * @param message the message to compare with
+   * @return true if the line equals the message
+   */
+  public boolean matches(String message) {
+    if (message.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (line[i] != message.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes the last line read.
+   *
+   * @return the line as a String
+   */
+  @Override
+  public String toString() {
+    return new String(line, 0, length, StandardCharsets.UTF_8);
+  }
+}
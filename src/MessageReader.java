@@ -0,0 +1,96 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated I/O thread that reads the newline delimited messages sent by
+ * ds-server, decodes them and feeds them into a lock-free MessageRing, so that
+ * the socket is drained while the client is busy computing scheduling
+ * decisions.
+ */
+public class MessageReader extends Thread {
+  private final static int RING_CAPACITY = 1024;
+  // Number of spins before parking while waiting for a message or a free slot,
+  // and the time to park for.
+  private final static int SPINS_BEFORE_PARK = 100;
+  private final static long PARK_NANOS = 100000L;
+
+  private final BufferedReader in;
+  private final MessageRing ring = new MessageRing(RING_CAPACITY);
+  private volatile boolean closed = false;
+  private volatile Thread consumer;
+
+  /**
+   * Constructs the reader thread for the input stream of a ds-server connection.
+   *
+   * @param inputStream the input stream of the Socket connection to ds-server
+   */
+  public MessageReader(InputStream inputStream) {
+    super("ds-server-reader");
+    setDaemon(true);
+    this.in = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads messages from ds-server until the connection is closed and publishes
+   * them to the ring.
+   */
+  @Override
+  public void run() {
+    try {
+      String message = in.readLine();
+      while (message != null) {
+        // Wait for the consumer to free a slot if the ring is full, as when a
+        // 'GETS' or 'LSTJ' reply is longer than the ring. Spin briefly, then
+        // park so that a slow consumer doesn't keep a core busy.
+        int spins = 0;
+        while (!ring.offer(message)) {
+          if (spins++ < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+          } else {
+            LockSupport.parkNanos(this, PARK_NANOS);
+          }
+        }
+        LockSupport.unpark(consumer);
+        message = in.readLine();
+      }
+    } catch (IOException e) {
+      // The connection was closed while reading, treat it as the end of stream.
+    } finally {
+      closed = true;
+      LockSupport.unpark(consumer);
+    }
+  }
+
+  /**
+   * Takes the next message sent by ds-server, waiting for it to arrive if
+   * necessary. Must only be called from a single consumer thread.
+   *
+   * @return the next message, or null if the connection has been closed and all
+   *         messages have been taken
+   */
+  public String take() {
+    consumer = Thread.currentThread();
+
+    String message = ring.poll();
+    int spins = 0;
+    while (message == null) {
+      if (closed) {
+        // Check the ring once more, as a message may have been published before
+        // the connection closed.
+        return ring.poll();
+      }
+
+      // Spin briefly for replies that are already on their way, then park until
+      // the reader thread publishes the next message.
+      if (spins++ < SPINS_BEFORE_PARK) {
+        Thread.onSpinWait();
+      } else {
+        LockSupport.parkNanos(this, PARK_NANOS);
+      }
+      message = ring.poll();
+    }
+
+    return message;
+  }
+}
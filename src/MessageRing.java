@@ -0,0 +1,61 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free, bounded, single-producer single-consumer ring buffer of
+ * messages. The producer publishes a message by advancing the tail sequence
+ * after writing the slot, and the consumer frees the slot by advancing the head
+ * sequence after reading it, so neither side ever takes a lock.
+ */
+public class MessageRing {
+  private final String[] slots;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong(0), tail = new AtomicLong(0);
+
+  /**
+   * Constructs a ring buffer holding at least the given number of messages.
+   *
+   * @param capacity the minimum number of messages the ring can hold, rounded up
+   *                 to the next power of two
+   */
+  public MessageRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    this.slots = new String[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * Adds a message to the ring. Must only be called from the producer thread.
+   *
+   * @param message the message to add
+   * @return true if the message was added, false if the ring is full
+   */
+  public boolean offer(String message) {
+    long t = tail.get();
+    if (t - head.get() == slots.length) {
+      return false;
+    }
+
+    slots[(int) t & mask] = message;
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * Removes the oldest message from the ring. Must only be called from the
+   * consumer thread.
+   *
+   * @return the oldest message, or null if the ring is empty
+   */
+  public String poll() {
+    long h = head.get();
+    if (h == tail.get()) {
+      return null;
+    }
+
+    int index = (int) h & mask;
+    String message = slots[index];
+    slots[index] = null;
+    head.lazySet(h + 1);
+    return message;
+  }
+}
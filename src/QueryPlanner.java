@@ -0,0 +1,360 @@
+import java.util.*;
+
+/**
+ * Plans the smallest 'GETS' query that can answer a scheduling decision, and
+ * keeps the statistics of the traffic received for each decision.
+ *
+ * A decision is answered from the local model of the servers, built from the
+ * previous 'GETS Capable' responses, when it is fresh and holds every server
+ * type capable of the job. Otherwise 'GETS Avail' is tried when it is likely to
+ * return a fitting server, and 'GETS Capable' is only issued when neither
+ * produces a fit.
+ *
+ * The local model is fresh as long as every change ds-server reported since it
+ * was fetched could be applied to it: the jobs dispatched and servers
+ * terminated by the client, and jobs completing on servers with no waiting
+ * jobs. Server failures and recoveries, completions that start waiting jobs,
+ * jobs queued on a booting server the model can't follow, and servers
+ * finishing booting, which ds-server doesn't report, invalidate it.
+ * The model needs the server types of ds-system.xml to know which types a job
+ * is capable of.
+ *
+ * 'GETS Avail' is skipped while it is known to miss: once it returned no fit
+ * for a job, it can't return one for a job needing at least the same resources
+ * until ds-server reports resources being freed.
+ */
+public class QueryPlanner {
+  // Maximum number of decisions answered from the local model before refetching.
+  private final static int MAX_MODEL_AGE = 32;
+
+  // Server type codes in the order of ds-system.xml, and their capacities and
+  // boot times by ServerType code, to filter and update the local model.
+  private int[] typeOrder = new int[0];
+  private int[] typeCores = new int[0], typeMems = new int[0], typeDisks = new int[0], typeBootTimes = new int[0];
+
+  // The servers of each type by ServerType code, or null if the type is not in
+  // the local model.
+  private List<List<Server>> model = new ArrayList<List<Server>>();
+  private int modelAge;
+  // The servers of the local model booted by the client, whose queue is known.
+  private Set<Server> bootedServers = Collections.newSetFromMap(new IdentityHashMap<Server, Boolean>());
+  // Resources of the dispatched jobs by job ID, to apply their completion.
+  private int[] jobCores = new int[0], jobMems = new int[0], jobDisks = new int[0];
+
+  private boolean availMissed = false;
+  private int missCore, missMem, missDisk;
+
+  // Traffic statistics
+  private long decisions, modelHits, availQueries, availHits, availSkips, capableQueries;
+  private long decisionBytes, decisionLines, totalBytes, totalLines;
+
+  /**
+   * Sets the server types from the server catalog, which enables answering
+   * decisions from the local model.
+   *
+   * @param catalog the List of Servers in ds-system.xml
+   */
+  public void setCapacities(List<Server> catalog) {
+    // Replace the server types of any catalog set before.
+    typeOrder = new int[0];
+    for (Server s : catalog) {
+      int type = s.getTypeCode();
+      if (type >= typeCores.length) {
+        typeCores = Arrays.copyOf(typeCores, type + 1);
+        typeMems = Arrays.copyOf(typeMems, type + 1);
+        typeDisks = Arrays.copyOf(typeDisks, type + 1);
+        typeBootTimes = Arrays.copyOf(typeBootTimes, type + 1);
+      }
+      if (s.getID() == 0) {
+        typeOrder = Arrays.copyOf(typeOrder, typeOrder.length + 1);
+        typeOrder[typeOrder.length - 1] = type;
+      }
+      typeCores[type] = s.getCore();
+      typeMems[type] = s.getMem();
+      typeDisks[type] = s.getDisk();
+      typeBootTimes[type] = s.getBootTime();
+    }
+    while (model.size() < typeCores.length) {
+      model.add(null);
+    }
+  }
+
+  /**
+   * Starts planning a new scheduling decision.
+   */
+  public void startDecision() {
+    decisions++;
+    decisionBytes = 0;
+    decisionLines = 0;
+  }
+
+  /**
+   * Gets the servers capable of a job from the local model, if it is fresh and
+   * holds every server type capable of the job.
+   *
+   * @param time    the current simulation time
+   * @param reqCore the required cores of the job
+   * @param reqMem  the required memory of the job
+   * @param reqDisk the required disk of the job
+   * @return the capable Servers in the order of ds-server, or null if the
+   *         decision can't be answered from the local model
+   */
+  public List<Server> getModelServers(int time, int reqCore, int reqMem, int reqDisk) {
+    if (typeOrder.length == 0 || modelAge >= MAX_MODEL_AGE) {
+      return null;
+    }
+
+    List<Server> servers = new ArrayList<Server>();
+    for (int type : typeOrder) {
+      if (!isCapable(type, reqCore, reqMem, reqDisk)) {
+        continue;
+      }
+      List<Server> typeServers = model.get(type);
+      if (typeServers == null) {
+        return null;
+      }
+
+      for (Server s : typeServers) {
+        // The model is stale once a server may have finished booting.
+        if (s.getStateCode() == ServerState.BOOTING && s.getCurStartTime() <= time) {
+          invalidate();
+          return null;
+        }
+        if (s.getStateCode() != ServerState.UNAVAILABLE) {
+          servers.add(s);
+        }
+      }
+    }
+    if (servers.isEmpty()) {
+      return null;
+    }
+    modelAge++;
+    return servers;
+  }
+
+  /**
+   * Records a decision answered from the local model.
+   */
+  public void modelHit() {
+    modelHits++;
+  }
+
+  /**
+   * Decides whether 'GETS Avail' is worth trying for a job.
+   *
+   * @param reqCore the required cores of the job
+   * @param reqMem  the required memory of the job
+   * @param reqDisk the required disk of the job
+   * @return false if 'GETS Avail' is known to return no fit for the job
+   */
+  public boolean shouldQueryAvail(int reqCore, int reqMem, int reqDisk) {
+    if (availMissed && reqCore >= missCore && reqMem >= missMem && reqDisk >= missDisk) {
+      availSkips++;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Records the outcome of a 'GETS Avail' query.
+   *
+   * @param reqCore the required cores of the job
+   * @param reqMem  the required memory of the job
+   * @param reqDisk the required disk of the job
+   * @param fit     whether the query returned a fitting server
+   */
+  public void availQueried(int reqCore, int reqMem, int reqDisk, boolean fit) {
+    availQueries++;
+    if (fit) {
+      availHits++;
+    } else {
+      availMissed = true;
+      missCore = reqCore;
+      missMem = reqMem;
+      missDisk = reqDisk;
+    }
+  }
+
+  /**
+   * Adds the server types of a 'GETS Capable' response to the local model.
+   *
+   * @param servers the capable Servers
+   * @param reqCore the required cores of the query
+   * @param reqMem  the required memory of the query
+   * @param reqDisk the required disk of the query
+   */
+  public void capableQueried(List<Server> servers, int reqCore, int reqMem, int reqDisk) {
+    capableQueries++;
+    if (typeOrder.length == 0) {
+      return;
+    }
+
+    // The response holds every available server of the capable types.
+    for (int type : typeOrder) {
+      if (isCapable(type, reqCore, reqMem, reqDisk)) {
+        model.set(type, new ArrayList<Server>());
+      }
+    }
+    for (Server s : servers) {
+      int type = s.getTypeCode();
+      if (type < model.size() && model.get(type) != null) {
+        model.get(type).add(s);
+      }
+    }
+    modelAge = 0;
+  }
+
+  /**
+   * Applies a job dispatched to a server to the local model.
+   *
+   * @param j the dispatched Job
+   * @param s the Server the Job was dispatched to
+   */
+  public void dispatched(Job j, Server s) {
+    int id = j.getID();
+    if (id >= jobCores.length) {
+      int length = Math.max(1024, jobCores.length);
+      while (length <= id) {
+        length <<= 1;
+      }
+      jobCores = Arrays.copyOf(jobCores, length);
+      jobMems = Arrays.copyOf(jobMems, length);
+      jobDisks = Arrays.copyOf(jobDisks, length);
+    }
+    jobCores[id] = j.getCore();
+    jobMems[id] = j.getMemory();
+    jobDisks[id] = j.getDisk();
+
+    int type = s.getTypeCode();
+    Server m = findModelServer(type, s.getID());
+    if (m == null) {
+      return;
+    }
+    // ds-server starts the jobs of a booting server in order when it has booted,
+    // so once a job doesn't fit, the jobs behind it wait whatever their size.
+    // The model can only follow the queue of a booting server while every job
+    // fits, and from the time the client booted it.
+    if (m.getStateCode() == ServerState.INACTIVE) {
+      bootedServers.add(m);
+    } else if (m.getStateCode() == ServerState.BOOTING && (m.getCore() < j.getCore() || m.getMem() < j.getMemory()
+        || m.getDisk() < j.getDisk() || (m.getWJobs() > 0 && !bootedServers.contains(m)))) {
+      invalidate();
+      return;
+    }
+    int bootTime = type < typeBootTimes.length ? typeBootTimes[type] : 0;
+    m.assign(j.getCore(), j.getMemory(), j.getDisk(), j.getSubmitTime() + bootTime);
+  }
+
+  /**
+   * Applies a job completion reported with 'JCPL' to the local model, or
+   * invalidates the model if the completion starts waiting jobs.
+   *
+   * @param jobID      the ID of the completed job
+   * @param serverType the type code of the server
+   * @param serverID   the ID of the server
+   */
+  public void completed(int jobID, int serverType, int serverID) {
+    availMissed = false;
+    Server m = findModelServer(serverType, serverID);
+    if (m == null) {
+      return;
+    }
+    if (m.getWJobs() > 0 || m.getRJobs() == 0 || jobID >= jobCores.length) {
+      invalidate();
+      return;
+    }
+    m.release(jobCores[jobID], jobMems[jobID], jobDisks[jobID]);
+  }
+
+  /**
+   * Applies a server terminated with 'TERM' to the local model.
+   *
+   * @param s the terminated Server
+   */
+  public void terminated(Server s) {
+    availMissed = false;
+    int type = s.getTypeCode();
+    Server m = findModelServer(type, s.getID());
+    if (m != null) {
+      m.terminate(typeCores[type], typeMems[type], typeDisks[type]);
+    }
+  }
+
+  /**
+   * Invalidates the local model after ds-server reported a server change that
+   * the model can't follow.
+   *
+   * @param resourcesFreed whether resources were freed, by a server recovery
+   */
+  public void serverChanged(boolean resourcesFreed) {
+    invalidate();
+    if (resourcesFreed) {
+      availMissed = false;
+    }
+  }
+
+  private void invalidate() {
+    Collections.fill(model, null);
+    bootedServers.clear();
+  }
+
+  private boolean isCapable(int type, int reqCore, int reqMem, int reqDisk) {
+    return typeCores[type] >= reqCore && typeMems[type] >= reqMem && typeDisks[type] >= reqDisk;
+  }
+
+  private Server findModelServer(int type, int ID) {
+    if (type < model.size() && model.get(type) != null) {
+      for (Server m : model.get(type)) {
+        if (m.getID() == ID) {
+          return m;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Counts a message received from ds-server in the current decision.
+   *
+   * @param message the message text
+   */
+  public void received(String message) {
+    // Messages are ASCII.
+    received(message.length());
+  }
+
+  /**
+   * Counts a message received from ds-server by its length.
+   *
+   * @param length the number of bytes of the message, without the new line
+   */
+  public void received(int length) {
+    // Count the new line character too.
+    int bytes = length + 1;
+    decisionBytes += bytes;
+    decisionLines++;
+    totalBytes += bytes;
+    totalLines++;
+  }
+
+  public long getDecisionBytes() {
+    return this.decisionBytes;
+  }
+
+  public long getDecisionLines() {
+    return this.decisionLines;
+  }
+
+  /**
+   * Summarises the queries and the traffic per decision.
+   *
+   * @return the query planner statistics
+   */
+  @Override
+  public String toString() {
+    long n = Math.max(1, decisions);
+    return String.format("%d decisions: %d from the local model, %d GETS Avail (%d fit, %d skipped), "
+        + "%d GETS Capable; %.1f bytes and %.2f lines received per decision", decisions, modelHits, availQueries,
+        availHits, availSkips, capableQueries, (double) totalBytes / n, (double) totalLines / n);
+  }
+}
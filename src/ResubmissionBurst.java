@@ -0,0 +1,255 @@
+import java.util.*;
+
+/**
+ * Keeps the candidate evaluation of the first job of a burst of resubmitted
+ * jobs, so that the rest of the burst can be placed without querying ds-server
+ * again. After a server fails, ds-server resubmits its jobs with 'JOBP' one
+ * after the other at the failure time, and they all compete for the same
+ * capacity.
+ *
+ * The burst holds the capable servers of the first job with the failed servers
+ * excluded, and the next available times that were evaluated for them. Every
+ * job placed during the burst is applied to the candidates: a job that fits
+ * takes its resources from the free resources of its server, and a job that
+ * has to wait queues on its server, which no later job then fits, and delays
+ * its next available time by its estimated runtime, so that the following jobs
+ * spread over the other servers instead of piling onto one. The next available
+ * times are only valid for jobs needing no more resources than the first job,
+ * so larger jobs are evaluated again.
+ *
+ * A job belongs to the burst if it is resubmitted at the same time and a
+ * candidate is capable of it: every candidate is capable of a job needing no
+ * more resources than the first job, and larger jobs are checked against the
+ * server types of ds-system.xml when they are set. The burst ends when
+ * ds-server reports any server change.
+ */
+public class ResubmissionBurst {
+  private final CandidateSet candidates = new CandidateSet();
+  private int[] availableTimes = new int[0];
+  private int time = -1, reqCore, reqMem, reqDisk;
+  // Capacities of the server types by ServerType code.
+  private int[] typeCores = new int[0], typeMems = new int[0], typeDisks = new int[0];
+
+  // Burst statistics
+  private long bursts, fastPlacements;
+
+  public static void main(String[] args) {
+    // Check of placing a burst of resubmitted jobs: three servers with one free
+    // core each, and a burst of 4-core jobs followed by a 1-core job.
+    DSClient client = new DSClient();
+    List<Server> servers = new ArrayList<Server>();
+    for (int i = 0; i < 3; i++) {
+      servers.add(new Server("medium " + i + " active 0 1 4000 16000 0 1"));
+    }
+    Job first = new Job("JOBP 100 1 50 4 1000 1000");
+    int[] availableTimes = { 200, 200, 200 };
+    client.burst.start(first, servers, availableTimes, 0, false);
+
+    // The following 4-core jobs have to wait too, and should spread over the
+    // servers that have no queued job yet.
+    Set<Integer> used = new HashSet<Integer>();
+    used.add(0);
+    for (int k = 2; k <= 3; k++) {
+      Server s = client.bestFitFromBurst(new Job("JOBP 100 " + k + " 50 4 1000 1000"));
+      check(used.add(s.getID()), "job " + k + " was queued behind another job of the burst on " + s);
+    }
+
+    // A 1-core job fits the free core of every server, but each of them now has
+    // a queued job, so it must wait instead of fitting.
+    client.bestFitFromBurst(new Job("JOBP 100 4 50 1 1000 1000"));
+    CandidateSet candidates = client.burst.getCandidates();
+    for (int i = 0; i < candidates.size(); i++) {
+      check(candidates.getPendingJobs(i) > 0, "server " + i + " has no queued job");
+    }
+    check(client.predictedStart > 100, "the 1-core job was fitted onto a server with a queued job");
+    System.out.println("Burst placements: OK");
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      System.out.println("Burst placements: FAILED, " + message);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Sets the server types from the server catalog, which lets the burst cover
+   * jobs needing more resources than its first job.
+   *
+   * @param catalog the List of Servers in ds-system.xml
+   */
+  public void setCapacities(List<Server> catalog) {
+    for (Server s : catalog) {
+      int type = s.getTypeCode();
+      if (type >= typeCores.length) {
+        typeCores = Arrays.copyOf(typeCores, type + 1);
+        typeMems = Arrays.copyOf(typeMems, type + 1);
+        typeDisks = Arrays.copyOf(typeDisks, type + 1);
+      }
+      typeCores[type] = s.getCore();
+      typeMems[type] = s.getMem();
+      typeDisks[type] = s.getDisk();
+    }
+  }
+
+  /**
+   * Starts a burst from the evaluation of its first job.
+   *
+   * @param j              the first resubmitted Job of the burst
+   * @param servers        the capable Servers of the job, without failed servers
+   * @param availableTimes the next available times evaluated for the servers, or
+   *                       null if none were evaluated; -1 marks a server that
+   *                       was not evaluated
+   * @param chosen         the index of the server the first job was placed on
+   * @param fit            whether the first job fits the free resources of the
+   *                       chosen server
+   */
+  public void start(Job j, List<Server> servers, int[] availableTimes, int chosen, boolean fit) {
+    if (servers.isEmpty()) {
+      end();
+      return;
+    }
+
+    candidates.load(servers);
+    this.availableTimes = new int[servers.size()];
+    if (availableTimes != null) {
+      System.arraycopy(availableTimes, 0, this.availableTimes, 0, servers.size());
+    } else {
+      Arrays.fill(this.availableTimes, -1);
+    }
+    time = j.getSubmitTime();
+    reqCore = j.getCore();
+    reqMem = j.getMemory();
+    reqDisk = j.getDisk();
+    apply(chosen, j, fit);
+    bursts++;
+  }
+
+  /**
+   * Ends the burst, after ds-server reported a server change.
+   */
+  public void end() {
+    time = -1;
+  }
+
+  /**
+   * Checks whether a job can be placed from the evaluation of the burst.
+   *
+   * @param j the Job to place
+   * @return true if the job is resubmitted in the burst and a candidate is
+   *         capable of it
+   */
+  public boolean covers(Job j) {
+    if (time < 0 || !j.isResubmitted() || j.getSubmitTime() != time) {
+      return false;
+    }
+    for (int i = 0; i < candidates.size(); i++) {
+      if (isCapable(i, j)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether a candidate is capable of a job.
+   *
+   * @param i the index of the candidate
+   * @param j the Job
+   * @return true if the job needs no more resources than the first job of the
+   *         burst, or than the capacity of the server type of the candidate
+   */
+  public boolean isCapable(int i, Job j) {
+    if (isEvaluated(j)) {
+      return true;
+    }
+    int type = candidates.getServer(i).getTypeCode();
+    return type < typeCores.length && j.getCore() <= typeCores[type] && j.getMemory() <= typeMems[type]
+        && j.getDisk() <= typeDisks[type];
+  }
+
+  /**
+   * Checks whether the next available times of the burst hold for a job, which
+   * is the case if it needs no more resources than the first job of the burst.
+   *
+   * @param j the Job
+   * @return true if the job needs no more resources than the first job
+   */
+  public boolean isEvaluated(Job j) {
+    return j.getCore() <= reqCore && j.getMemory() <= reqMem && j.getDisk() <= reqDisk;
+  }
+
+  /**
+   * Gets a candidate at the full capacity of its server type, to derive its
+   * current state from its job list.
+   *
+   * @param i the index of the candidate
+   * @return the candidate Server with the capacity of its type, or null if the
+   *         server types are not known
+   */
+  public Server getCapacity(int i) {
+    Server s = candidates.getServer(i);
+    int type = s.getTypeCode();
+    if (type >= typeCores.length || typeCores[type] == 0) {
+      return null;
+    }
+    return new Server(type, s.getID(), ServerState.UNKNOWN, -1, typeCores[type], typeMems[type], typeDisks[type],
+        s.getBootTime(), s.getHourlyRate());
+  }
+
+  public CandidateSet getCandidates() {
+    return this.candidates;
+  }
+
+  /**
+   * Gets the next available time of a candidate.
+   *
+   * @param i the index of the candidate
+   * @return the next available time, or -1 if it was not evaluated
+   */
+  public int getAvailableTime(int i) {
+    return this.availableTimes[i];
+  }
+
+  public void setAvailableTime(int i, int availableTime) {
+    this.availableTimes[i] = availableTime;
+  }
+
+  /**
+   * Applies a job placed on a candidate.
+   *
+   * @param i   the index of the candidate
+   * @param j   the placed Job
+   * @param fit whether the job fits the free resources of the candidate
+   */
+  public void placed(int i, Job j, boolean fit) {
+    apply(i, j, fit);
+    fastPlacements++;
+  }
+
+  private void apply(int i, Job j, boolean fit) {
+    if (i < 0) {
+      return;
+    }
+    if (fit) {
+      candidates.allocate(i, j.getCore(), j.getMemory(), j.getDisk());
+      return;
+    }
+
+    // The job waits on the server, so no later job of the burst fits it.
+    candidates.setPendingJobs(i, candidates.getPendingJobs(i) + 1);
+    if (availableTimes[i] >= 0) {
+      availableTimes[i] += j.getEstRuntime();
+    }
+  }
+
+  /**
+   * Summarises the bursts and the jobs placed from their evaluation.
+   *
+   * @return the burst statistics
+   */
+  @Override
+  public String toString() {
+    return String.format("%d resubmitted jobs placed from the evaluation of %d bursts", fastPlacements, bursts);
+  }
+}
@@ -0,0 +1,495 @@
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.*;
+
+/**
+ * Runs every ds-sim configuration in a set of directories against every
+ * combination of the DSClient '-e', '-t', '-b' and '-f' flags in parallel, and
+ * against a baseline First Fit client. Each run starts its own ds-server in a
+ * separate working directory on its own port, and the DSClient sessions run
+ * inside this JVM. The turnaround time, resource utilisation and total rental
+ * cost reported by ds-server are collected together with the client wall-time
+ * and round trips, and printed as a table normalised against First Fit. The
+ * wall-time runs from the start of the session, when the client has connected
+ * or the baseline client is launched, so waiting for ds-server to start is
+ * reported separately as setup time.
+ *
+ * Usage: java ScenarioRunner [--server path] [--baseline command]
+ * [--threads n] [--port n] [--csv file] [config directories or files ...]
+ *
+ * "--server path" -> The ds-server executable. Defaults to ./ds-server.
+ *
+ * "--baseline command" -> The command running the First Fit client. A '{port}'
+ * placeholder is replaced with the port of the run, otherwise baseline runs use
+ * the default port 50000 one at a time. Defaults to "./ds-client -n -a ff".
+ *
+ * "--threads n" -> The number of runs in parallel. Defaults to the number of
+ * available processors.
+ *
+ * "--port n" -> The first port of the isolated runs. Defaults to 50100.
+ *
+ * "--csv file" -> Also write the results of every run to a CSV file.
+ *
+ * The configurations default to configs/other.
+ */
+public class ScenarioRunner {
+  // The DSClient flags combined into the algorithms, also searched by Autotuner.
+  final static List<String> FLAGS = List.of("-e", "-t", "-b", "-f");
+  private final static String BASELINE = "FF";
+  private final static int DEFAULT_PORT = 50000;
+  private final static long RUN_TIMEOUT_MS = 600000L;
+  private final static long SERVER_EXIT_TIMEOUT_MS = 10000L;
+
+  private final static Pattern TURNAROUND = Pattern.compile(".*avg turnaround time: (\\d+).*");
+  private final static Pattern UTILISATION = Pattern.compile(".*avg util: (\\d+\\.?\\d*).*");
+  private final static Pattern COST = Pattern.compile(".*total cost: \\$(\\d+\\.?\\d*).*");
+
+  private String serverPath = "./ds-server";
+  private String baselineCommand = "./ds-client -n -a ff";
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private AtomicInteger nextPort = new AtomicInteger(50100);
+  private final Object defaultPortLock = new Object();
+
+  public ScenarioRunner() {
+  }
+
+  /**
+   * Constructs a runner for other tools running DSClient sessions on a matrix of
+   * configurations.
+   *
+   * @param serverPath the ds-server executable
+   * @param threads    the number of runs in parallel
+   * @param firstPort  the first port of the isolated runs
+   */
+  public ScenarioRunner(String serverPath, int threads, int firstPort) {
+    this.serverPath = serverPath;
+    this.threads = threads;
+    this.nextPort.set(firstPort);
+  }
+
+  /**
+   * The results of running a single configuration with a single algorithm.
+   */
+  public static class Result {
+    public final String config, algorithm;
+    public boolean ok = false;
+    public double turnaround, utilisation, cost, wallMs, setupMs, roundTrips;
+    // Time the session started, from System.nanoTime().
+    long sessionStart;
+
+    public Result(String config, String algorithm) {
+      this.config = config;
+      this.algorithm = algorithm;
+    }
+  }
+
+  public static void main(String[] args) {
+    ScenarioRunner runner = new ScenarioRunner();
+    List<File> configs = new ArrayList<File>();
+    String csvPath = null;
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--server")) {
+        runner.serverPath = args[++i];
+      } else if (args[i].equals("--baseline")) {
+        runner.baselineCommand = args[++i];
+      } else if (args[i].equals("--threads")) {
+        runner.threads = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--port")) {
+        runner.nextPort.set(Integer.parseInt(args[++i]));
+      } else if (args[i].equals("--csv")) {
+        csvPath = args[++i];
+      } else {
+        configs.addAll(findConfigs(new File(args[i])));
+      }
+    }
+    if (configs.isEmpty()) {
+      configs.addAll(findConfigs(new File("configs/other")));
+    }
+
+    List<Result> results = runner.runAll(configs, algorithms());
+    System.out.println(formatTable(results));
+
+    if (csvPath != null) {
+      try {
+        writeCsv(results, csvPath);
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Lists every combination of the client flags as an algorithm, each given as
+   * its argument list, in addition to the baseline.
+   *
+   * @return a Map from algorithm names to the DSClient arguments
+   */
+  public static Map<String, String[]> algorithms() {
+    Map<String, String[]> algorithms = new LinkedHashMap<String, String[]>();
+    algorithms.put(BASELINE, null);
+
+    for (int mask = 0; mask < (1 << FLAGS.size()); mask++) {
+      List<String> flags = new ArrayList<String>();
+      for (int f = 0; f < FLAGS.size(); f++) {
+        if ((mask & (1 << f)) != 0) {
+          flags.add(FLAGS.get(f));
+        }
+      }
+      String name = flags.isEmpty() ? "MTTA" : "MTTA " + String.join(" ", flags);
+      algorithms.put(name, flags.toArray(new String[0]));
+    }
+
+    return algorithms;
+  }
+
+  /**
+   * Finds the ds-sim configuration files in a directory, or the file itself if
+   * it is not a directory.
+   *
+   * @param path the directory or configuration file
+   * @return the List of configuration files, sorted by name
+   */
+  public static List<File> findConfigs(File path) {
+    List<File> configs = new ArrayList<File>();
+    if (path.isDirectory()) {
+      File[] files = path.listFiles((dir, name) -> name.endsWith(".xml"));
+      if (files != null) {
+        Arrays.sort(files);
+        configs.addAll(Arrays.asList(files));
+      }
+    } else if (path.exists()) {
+      configs.add(path);
+    } else {
+      System.err.println("No configuration found at " + path);
+    }
+    return configs;
+  }
+
+  /**
+   * Runs every configuration with every algorithm in parallel.
+   *
+   * @param configs    the configuration files to run
+   * @param algorithms the algorithms to run, as returned by algorithms()
+   * @return the List of Results in configuration then algorithm order
+   */
+  public List<Result> runAll(List<File> configs, Map<String, String[]> algorithms) {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<Result>> futures = new ArrayList<Future<Result>>();
+
+    for (File config : configs) {
+      for (Map.Entry<String, String[]> algorithm : algorithms.entrySet()) {
+        futures.add(pool.submit(() -> run(config, algorithm.getKey(), algorithm.getValue())));
+      }
+    }
+
+    List<Result> results = new ArrayList<Result>();
+    for (Future<Result> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException | ExecutionException e) {
+        e.printStackTrace();
+      }
+    }
+    pool.shutdown();
+
+    return results;
+  }
+
+  /**
+   * Runs a single configuration with a single algorithm.
+   *
+   * @param config     the configuration file to run
+   * @param algorithm  the name of the algorithm
+   * @param clientArgs the DSClient arguments, or null to run the baseline
+   * @return the Result of the run
+   */
+  public Result run(File config, String algorithm, String[] clientArgs) {
+    Result result = new Result(config.getName(), algorithm);
+
+    // Run the baseline client on the default port one at a time if it can't be
+    // configured with a port.
+    if (clientArgs == null && !baselineCommand.contains("{port}")) {
+      synchronized (defaultPortLock) {
+        runIsolated(config, DEFAULT_PORT, clientArgs, result);
+      }
+    } else {
+      runIsolated(config, nextPort.getAndIncrement(), clientArgs, result);
+    }
+
+    System.err.println("Finished " + result.config + " " + result.algorithm + (result.ok ? "" : " (failed)"));
+    return result;
+  }
+
+  /**
+   * Starts ds-server in a new working directory on the given port, runs the
+   * client against it and collects the results from the ds-server log.
+   *
+   * @param config     the configuration file to run
+   * @param port       the port for ds-server to listen on
+   * @param clientArgs the DSClient arguments, or null to run the baseline
+   * @param result     the Result to fill in
+   */
+  public void runIsolated(File config, int port, String[] clientArgs, Result result) {
+    Process server = null;
+    Path workDir = null;
+    try {
+      workDir = Files.createTempDirectory("ds-scenario");
+      File serverLog = workDir.resolve("server.log").toFile();
+
+      server = new ProcessBuilder(new File(serverPath).getAbsolutePath(), "-c", config.getAbsolutePath(), "-v",
+          "brief", "-n", "-p", Integer.toString(port)).directory(workDir.toFile()).redirectErrorStream(true)
+          .redirectOutput(serverLog).start();
+
+      long serverStart = System.nanoTime();
+      if (clientArgs == null) {
+        runBaseline(workDir.toFile(), port, result);
+      } else {
+        result.roundTrips = runClient(workDir.resolve("ds-system.xml").toFile(), port, clientArgs, result);
+      }
+      result.wallMs = (System.nanoTime() - result.sessionStart) / 1e6;
+      result.setupMs = (result.sessionStart - serverStart) / 1e6;
+
+      server.waitFor(SERVER_EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      parseServerLog(serverLog, result);
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      // The Result is left failed, so that the run still gets its row.
+      System.err.println("Run " + result.config + " " + result.algorithm + " failed: " + e);
+    } finally {
+      if (server != null) {
+        server.destroy();
+      }
+      deleteDirectory(workDir);
+    }
+  }
+
+  /**
+   * Runs a DSClient session in this JVM against the ds-server on the given port.
+   *
+   * @param systemXml  the ds-system.xml file written by ds-server
+   * @param port       the port that ds-server is listening on
+   * @param clientArgs the DSClient arguments
+   * @return the number of round trips made by the client
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public int runClient(File systemXml, int port, String[] clientArgs) throws IOException, InterruptedException {
+    return runClient(systemXml, port, clientArgs, null);
+  }
+
+  /**
+   * Runs a DSClient session like runClient(), recording when the client
+   * connected as the start of the session.
+   *
+   * @param systemXml  the ds-system.xml file written by ds-server
+   * @param port       the port that ds-server is listening on
+   * @param clientArgs the DSClient arguments
+   * @param result     the Result to record the session start in, or null
+   * @return the number of round trips made by the client
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public int runClient(File systemXml, int port, String[] clientArgs, Result result)
+      throws IOException, InterruptedException {
+    // Wait for ds-server to write the system information before configuring.
+    for (int attempt = 0; attempt < 50 && !systemXml.exists(); attempt++) {
+      Thread.sleep(100);
+    }
+
+    DSClient client = new DSClient();
+    client.systemXmlPath = systemXml.getPath();
+    client.configureClient(clientArgs);
+
+    // Connect as soon as ds-server starts listening.
+    for (int attempt = 0;; attempt++) {
+      try {
+        client.connect("localhost", port, System.getProperty("user.name"));
+        // Fail the session like a baseline run if ds-server stops replying,
+        // rather than blocking the thread it runs on.
+        client.DSServer.setSoTimeout((int) RUN_TIMEOUT_MS);
+        if (result != null) {
+          result.sessionStart = System.nanoTime();
+        }
+        break;
+      } catch (ConnectException e) {
+        if (attempt >= 50) {
+          throw e;
+        }
+        Thread.sleep(100);
+      }
+    }
+
+    client.schedule();
+    client.disconnect();
+    return client.roundTrips;
+  }
+
+  /**
+   * Runs the baseline client command against the ds-server on the given port.
+   *
+   * The session starts when the client is launched, after the fixed wait for
+   * ds-server.
+   * 
+   * @param workDir the working directory of the run
+   * @param port    the port that ds-server is listening on
+   * @param result  the Result to record the session start in
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public void runBaseline(File workDir, int port, Result result) throws IOException, InterruptedException {
+    // Give ds-server time to start listening, as the baseline client doesn't retry.
+    Thread.sleep(1000);
+
+    String command = baselineCommand.replace("{port}", Integer.toString(port));
+    List<String> commandArgs = new ArrayList<String>(Arrays.asList(command.trim().split("\\s+")));
+    if (commandArgs.get(0).startsWith(".")) {
+      commandArgs.set(0, new File(commandArgs.get(0)).getAbsolutePath());
+    }
+
+    result.sessionStart = System.nanoTime();
+    Process client = new ProcessBuilder(commandArgs).directory(workDir)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectErrorStream(true).start();
+    if (!client.waitFor(RUN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+      client.destroy();
+    }
+  }
+
+  /**
+   * Parses the summary printed by ds-server at the end of the simulation.
+   *
+   * @param serverLog the ds-server output file
+   * @param result    the Result to fill in
+   * @throws IOException
+   */
+  public static void parseServerLog(File serverLog, Result result) throws IOException {
+    boolean turnaround = false, utilisation = false, cost = false;
+
+    for (String line : Files.readAllLines(serverLog.toPath())) {
+      Matcher m = TURNAROUND.matcher(line);
+      if (m.matches()) {
+        result.turnaround = Double.parseDouble(m.group(1));
+        turnaround = true;
+      }
+      m = UTILISATION.matcher(line);
+      if (m.matches()) {
+        result.utilisation = Double.parseDouble(m.group(1));
+        utilisation = true;
+      }
+      m = COST.matcher(line);
+      if (m.matches()) {
+        result.cost = Double.parseDouble(m.group(1));
+        cost = true;
+      }
+    }
+
+    result.ok = turnaround && utilisation && cost;
+  }
+
+  /**
+   * Formats the averages of every algorithm over all configurations, and the
+   * averages normalised against the baseline over the configurations where the
+   * baseline succeeded, as a markdown table.
+   *
+   * @param results the Results of all runs
+   * @return the formatted table
+   */
+  public static String formatTable(List<Result> results) {
+    // Index the baseline results by configuration.
+    Map<String, Result> baseline = new HashMap<String, Result>();
+    Map<String, List<Result>> byAlgorithm = new LinkedHashMap<String, List<Result>>();
+    for (Result r : results) {
+      if (r.algorithm.equals(BASELINE) && r.ok) {
+        baseline.put(r.config, r);
+      }
+      byAlgorithm.computeIfAbsent(r.algorithm, k -> new ArrayList<Result>()).add(r);
+    }
+
+    StringBuilder table = new StringBuilder();
+    table.append("| Algorithm | Turnaround | Normalised (FF) | Utilisation | Normalised (FF) | Cost | Normalised (FF)"
+        + " | Wall-time (ms) | Setup (ms) | Round trips | Failed |\n");
+    table.append("|---|---|---|---|---|---|---|---|---|---|---|\n");
+
+    for (Map.Entry<String, List<Result>> entry : byAlgorithm.entrySet()) {
+      double[] sums = new double[6];
+      double[] ownSums = new double[3], baseSums = new double[3];
+      int count = 0, failed = 0;
+
+      for (Result r : entry.getValue()) {
+        if (!r.ok) {
+          failed++;
+          continue;
+        }
+        count++;
+        sums[0] += r.turnaround;
+        sums[1] += r.utilisation;
+        sums[2] += r.cost;
+        sums[3] += r.wallMs;
+        sums[4] += r.roundTrips;
+        sums[5] += r.setupMs;
+
+        Result b = baseline.get(r.config);
+        if (b != null) {
+          ownSums[0] += r.turnaround;
+          ownSums[1] += r.utilisation;
+          ownSums[2] += r.cost;
+          baseSums[0] += b.turnaround;
+          baseSums[1] += b.utilisation;
+          baseSums[2] += b.cost;
+        }
+      }
+
+      table.append("| ").append(entry.getKey());
+      for (int m = 0; m < 3; m++) {
+        table.append(" | ").append(format(count == 0 ? Double.NaN : sums[m] / count, 2));
+        table.append(" | ").append(format(baseSums[m] == 0 ? Double.NaN : ownSums[m] / baseSums[m], 4));
+      }
+      table.append(" | ").append(format(count == 0 ? Double.NaN : sums[3] / count, 0));
+      table.append(" | ").append(format(count == 0 ? Double.NaN : sums[5] / count, 0));
+      table.append(" | ").append(format(count == 0 ? Double.NaN : sums[4] / count, 0));
+      table.append(" | ").append(failed).append(" |\n");
+    }
+
+    return table.toString();
+  }
+
+  /**
+   * Writes the results of every run to a CSV file.
+   *
+   * @param results the Results of all runs
+   * @param path    the path of the CSV file
+   * @throws IOException
+   */
+  public static void writeCsv(List<Result> results, String path) throws IOException {
+    try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+      out.println("config,algorithm,ok,turnaround,utilisation,cost,wall_ms,setup_ms,round_trips");
+      for (Result r : results) {
+        out.println(r.config + "," + r.algorithm + "," + r.ok + "," + r.turnaround + "," + r.utilisation + ","
+            + r.cost + "," + r.wallMs + "," + r.setupMs + "," + r.roundTrips);
+      }
+    }
+  }
+
+  private static String format(double value, int decimals) {
+    if (Double.isNaN(value)) {
+      return "-";
+    }
+    return String.format("%." + decimals + "f", value);
+  }
+
+  static void deleteDirectory(Path dir) {
+    if (dir == null) {
+      return;
+    }
+    File[] files = dir.toFile().listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.toFile().delete();
+  }
+}
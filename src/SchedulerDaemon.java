@@ -0,0 +1,207 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Long-lived scheduler service that runs one DSClient scheduling session per
+ * ds-server endpoint, each on its own thread. All sessions run in the same JVM,
+ * so they share the warmed-up JIT and the server catalogs parsed by XMLParser
+ * instead of paying the JVM startup and warm-up for every run. Sessions run on
+ * virtual threads when the JVM supports them, and on a cached thread pool
+ * otherwise.
+ *
+ * Usage: java SchedulerDaemon [client options] host:port[@ds-system.xml] ...
+ *
+ * The client options are the same as for DSClient and apply to every session.
+ * The files written with '--record', '--history' and '--shadow' are named per
+ * session, by inserting the endpoint before the file extension.
+ * Further endpoints can be written to standard input, one per line, while the
+ * daemon runs. The daemon exits once standard input is closed and all sessions
+ * have completed.
+ */
+public class SchedulerDaemon {
+  private final String[] clientArgs;
+  private final ExecutorService sessions;
+
+  public SchedulerDaemon(String[] clientArgs) {
+    this.clientArgs = clientArgs;
+    this.sessions = newSessionExecutor();
+  }
+
+  public static void main(String[] args) {
+    // Split the arguments into client options and endpoints.
+    List<String> clientArgs = new ArrayList<String>();
+    List<String> endpoints = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if (DSClient.VALUED_OPTIONS.contains(args[i]) && i + 1 < args.length) {
+        clientArgs.add(args[i]);
+        clientArgs.add(args[++i]);
+      } else if (args[i].startsWith("-")) {
+        clientArgs.add(args[i]);
+      } else {
+        endpoints.add(args[i]);
+      }
+    }
+
+    try {
+      // Setup simple log file in the daemon local directory, shared by all sessions.
+      new DSClient().startLog(args);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    // Validate the client options once before starting any sessions.
+    new DSClient().configureClient(clientArgs.toArray(new String[0]));
+
+    SchedulerDaemon daemon = new SchedulerDaemon(clientArgs.toArray(new String[0]));
+    for (String endpoint : endpoints) {
+      daemon.trySubmit(endpoint);
+    }
+
+    // Accept further endpoints from standard input until it is closed.
+    try {
+      BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+      String line = stdin.readLine();
+      while (line != null) {
+        if (!line.isBlank()) {
+          daemon.trySubmit(line.trim());
+        }
+        line = stdin.readLine();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    daemon.shutdown();
+  }
+
+  /**
+   * Starts a scheduling session against a ds-server endpoint, reporting a
+   * malformed endpoint instead of failing.
+   *
+   * @param endpoint the endpoint as accepted by submit()
+   */
+  public void trySubmit(String endpoint) {
+    try {
+      submit(endpoint);
+    } catch (IllegalArgumentException e) {
+      System.err.println("Invalid endpoint '" + endpoint + "': " + e.getMessage());
+      System.out.println(endpoint + ": invalid endpoint, expected host:port[@ds-system.xml]");
+    }
+  }
+
+  /**
+   * Starts a scheduling session against a ds-server endpoint.
+   *
+   * @param endpoint the endpoint in the format host:port, optionally followed by
+   *                 '@' and the path of the ds-system.xml file of the ds-server
+   * @return a Future completing with the number of jobs scheduled in the session
+   * @throws IllegalArgumentException if the endpoint is malformed
+   */
+  public Future<Integer> submit(String endpoint) {
+    String address = endpoint;
+    String xmlPath = null;
+    if (endpoint.contains("@")) {
+      address = endpoint.substring(0, endpoint.indexOf('@'));
+      xmlPath = endpoint.substring(endpoint.indexOf('@') + 1);
+    }
+
+    int separator = address.lastIndexOf(':');
+    String host = separator > 0 ? address.substring(0, separator) : "localhost";
+    int port = Integer.parseInt(address.substring(separator + 1));
+    if (port < 1 || port > 65535) {
+      throw new IllegalArgumentException("port out of range: " + port);
+    }
+    String systemXmlPath = xmlPath;
+
+    return sessions.submit(() -> runSession(endpoint, host, port, systemXmlPath));
+  }
+
+  /**
+   * Runs a complete scheduling session on a new DSClient and reports its result
+   * to System.out.
+   *
+   * @param endpoint      the endpoint description, for reporting
+   * @param host          the host that the ds-server instance is running on
+   * @param port          the port that the ds-server instance is running on
+   * @param systemXmlPath the path of ds-system.xml, or null for the default
+   * @return the number of jobs scheduled in the session
+   */
+  public int runSession(String endpoint, String host, int port, String systemXmlPath) {
+    DSClient client = new DSClient();
+    client.systemXmlPath = systemXmlPath;
+    client.configureClient(sessionArgs(host, port));
+
+    long start = System.nanoTime();
+    try {
+      client.connect(host, port, System.getProperty("user.name"));
+      client.schedule();
+      client.disconnect();
+    } catch (IOException | RuntimeException e) {
+      // A RuntimeException would otherwise end up in the discarded Future of the
+      // session, so report it like a lost connection.
+      System.err.println("Session " + endpoint + " failed: " + e);
+      System.out.println(endpoint + ": failed (" + (e.getMessage() != null ? e.getMessage() : e) + ")");
+      return client.scheduledJobs;
+    }
+
+    long elapsedMs = (System.nanoTime() - start) / 1000000L;
+    System.out.println(endpoint + ": " + client.scheduledJobs + " jobs scheduled in " + elapsedMs + " ms");
+    return client.scheduledJobs;
+  }
+
+  /**
+   * Gets the client options of a session, with the files written by the session
+   * named after its endpoint so that concurrent sessions don't overwrite each
+   * other's. The '--stats' directory is shared, since the statistics are kept
+   * per system and each session merges its own into the file when it saves.
+   *
+   * @param host the host of the ds-server of the session
+   * @param port the port of the ds-server of the session
+   * @return the client options of the session
+   */
+  String[] sessionArgs(String host, int port) {
+    String[] args = clientArgs.clone();
+    String suffix = "-" + (host + "-" + port).replaceAll("[^A-Za-z0-9.-]", "_");
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (DSClient.OUTPUT_OPTIONS.contains(args[i])) {
+        String path = args[++i];
+        int extension = path.lastIndexOf('.');
+        args[i] = extension > path.lastIndexOf(File.separatorChar) + 1
+            ? path.substring(0, extension) + suffix + path.substring(extension)
+            : path + suffix;
+      } else if (DSClient.VALUED_OPTIONS.contains(args[i])) {
+        i++;
+      }
+    }
+    return args;
+  }
+
+  /**
+   * Waits for all running sessions to complete and stops accepting new ones.
+   */
+  public void shutdown() {
+    sessions.shutdown();
+    try {
+      sessions.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Creates the executor running the sessions, using a virtual thread per
+   * session if the JVM supports it.
+   *
+   * @return the session ExecutorService
+   */
+  private static ExecutorService newSessionExecutor() {
+    try {
+      Method virtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtualExecutor.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+}
@@ -4,31 +4,46 @@ import java.util.*;
  * Constructs and provides interfaces for the server object
  */
 public class Server implements Comparable<Server>{
-  private String type, state;
+  // Interned ServerType and ServerState codes
+  private int type, state;
   private int ID, curStartTime, core, mem, disk, bootTime, wJobs, rJobs;
   private float hourlyRate;
   private List<Job> serverJobs;
 
   /**
-   * Constructs a server object from a string
+   * Constructs a server object from a string. The fields are parsed in place and
+   * the type and state are interned, so no strings are allocated.
    * 
    * @param s Constructor input string with server fields delimited by the space
    *          character
    */
   public Server (String s) {
-    String[] parsed = s.split(" ");
-    type = parsed[0];
-    ID = Integer.parseInt(parsed[1]);
-    state = parsed[2];
-    curStartTime = Integer.parseInt(parsed[3]);
-    core = Integer.parseInt(parsed[4]);
-    mem = Integer.parseInt(parsed[5]);
-    disk = Integer.parseInt(parsed[6]);
-    wJobs = Integer.parseInt(parsed[7]);
-    rJobs = Integer.parseInt(parsed[8]);
+    int start = 0;
+    int end = fieldEnd(s, start);
+    type = ServerType.intern(s, start, end);
+    end = fieldEnd(s, start = end + 1);
+    ID = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    state = ServerState.parse(s, start, end);
+    end = fieldEnd(s, start = end + 1);
+    curStartTime = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    core = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    mem = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    disk = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    wJobs = Integer.parseInt(s, start, end, 10);
+    end = fieldEnd(s, start = end + 1);
+    rJobs = Integer.parseInt(s, start, end, 10);
   }
 
   public Server (String type, int ID, String state, int curStartTime, int core, int mem, int disk, int bootTime, float hourlyRate) {
+    this(ServerType.intern(type), ID, ServerState.parse(state), curStartTime, core, mem, disk, bootTime, hourlyRate);
+  }
+
+  public Server (int type, int ID, int state, int curStartTime, int core, int mem, int disk, int bootTime, float hourlyRate) {
     this.type = type;
     this.state = state;
     this.ID = ID;
@@ -43,9 +58,9 @@ public class Server implements Comparable<Server>{
   }
 
   public Server (String type, int ID) {
-    this.type = type;
+    this.type = ServerType.intern(type);
     this.ID = ID;
-    this.state = "unknown";
+    this.state = ServerState.UNKNOWN;
     this.curStartTime = -1;
     this.core = -1;
     this.mem = -1;
@@ -62,6 +77,15 @@ public class Server implements Comparable<Server>{
    * @return server type in string format
    */
   public String getType() {
+    return ServerType.name(this.type);
+  }
+
+  /**
+   * Getter function for the interned server type
+   * 
+   * @return server type code in int format
+   */
+  public int getTypeCode() {
     return this.type;
   }
 
@@ -80,6 +104,15 @@ public class Server implements Comparable<Server>{
    * @return server state in string format
    */
   public String getState() {
+    return ServerState.name(this.state);
+  }
+
+  /**
+   * Getter function for the interned server state
+   * 
+   * @return ServerState code in int format
+   */
+  public int getStateCode() {
     return this.state;
   }
 
@@ -147,6 +180,134 @@ public class Server implements Comparable<Server>{
 
 
 
+  /**
+   * Updates the server state, available resources and job counts as ds-server
+   * does when a job is scheduled to it, so that the server can be kept as a
+   * local model of ds-server.
+   * 
+   * @param reqCore the cores of the scheduled job
+   * @param reqMem  the memory of the scheduled job
+   * @param reqDisk the disk of the scheduled job
+   * @param bootEnd the time the server finishes booting if it is inactive
+   */
+  void assign(int reqCore, int reqMem, int reqDisk, int bootEnd) {
+    boolean fits = core >= reqCore && mem >= reqMem && disk >= reqDisk;
+
+    // A job scheduled to an inactive or booting server starts when the server has
+    // booted, and counts as waiting until then.
+    if (state == ServerState.INACTIVE || state == ServerState.BOOTING) {
+      if (state == ServerState.INACTIVE) {
+        state = ServerState.BOOTING;
+        curStartTime = bootEnd;
+      }
+      wJobs++;
+    } else if (wJobs == 0 && fits) {
+      state = ServerState.ACTIVE;
+      rJobs++;
+    } else {
+      wJobs++;
+      return;
+    }
+
+    if (fits) {
+      core -= reqCore;
+      mem -= reqMem;
+      disk -= reqDisk;
+    }
+  }
+
+  /**
+   * Updates the server as ds-server does when a running job completes and no
+   * jobs are waiting, so that the server can be kept as a local model of
+   * ds-server.
+   * 
+   * @param jobCore the cores of the completed job
+   * @param jobMem  the memory of the completed job
+   * @param jobDisk the disk of the completed job
+   */
+  void release(int jobCore, int jobMem, int jobDisk) {
+    core += jobCore;
+    mem += jobMem;
+    disk += jobDisk;
+    rJobs--;
+    state = rJobs == 0 ? ServerState.IDLE : ServerState.ACTIVE;
+  }
+
+  /**
+   * Updates the server as ds-server does when it is terminated, so that the
+   * server can be kept as a local model of ds-server.
+   * 
+   * @param capacityCore the core count of the server type
+   * @param capacityMem  the memory of the server type
+   * @param capacityDisk the disk space of the server type
+   */
+  void terminate(int capacityCore, int capacityMem, int capacityDisk) {
+    core = capacityCore;
+    mem = capacityMem;
+    disk = capacityDisk;
+    wJobs = 0;
+    rJobs = 0;
+    curStartTime = -1;
+    state = ServerState.INACTIVE;
+  }
+
+  /**
+   * Derives the current state of a catalog server from its job list, as
+   * retrieved with 'LSTJ', so that the server can be evaluated without 'GETS'.
+   * Jobs listed as waiting on a server with no running job wait for it to boot,
+   * and those of them with a start time start when it has booted. The catalog
+   * server is left unchanged.
+   * 
+   * @param serverJobs the jobs scheduled to the server
+   * @return a new Server with the available resources, state and job counts
+   *         derived from the job list
+   */
+  Server observe(List<Job> serverJobs) {
+    Server s = new Server(type, ID, ServerState.UNKNOWN, -1, core, mem, disk, bootTime, hourlyRate);
+    for (Job j : serverJobs) {
+      if (j.getState() == JobState.RUNNING) {
+        s.rJobs++;
+      } else {
+        s.wJobs++;
+      }
+    }
+
+    if (s.rJobs > 0) {
+      s.state = ServerState.ACTIVE;
+    } else if (s.wJobs > 0) {
+      s.state = ServerState.BOOTING;
+    }
+    for (Job j : serverJobs) {
+      if (j.getState() == JobState.RUNNING || (s.state == ServerState.BOOTING && j.getStartTime() >= 0)) {
+        s.core -= j.getCore();
+        s.mem -= j.getMemory();
+        s.disk -= j.getDisk();
+      }
+      // A booting server becomes available when its first jobs start.
+      if (s.state == ServerState.BOOTING) {
+        s.curStartTime = Math.max(s.curStartTime, j.getStartTime());
+      }
+    }
+    return s;
+  }
+
+  /**
+   * Derives the available resources and job counts of a server of the same
+   * type from its job list like observe(), for a state known by other means.
+   *
+   * @param serverJobs the List of Jobs assigned to the server
+   * @param ID         the ID of the server
+   * @param state      the ServerState code of the server
+   * @return a new Server with the given ID and state, and the available
+   *         resources and job counts derived from the job list
+   */
+  Server observe(List<Job> serverJobs, int ID, int state) {
+    Server s = observe(serverJobs);
+    s.ID = ID;
+    s.state = state;
+    return s;
+  }
+
   public List<Job> getServerJobs() {
     return this.serverJobs;
   }
@@ -163,7 +324,7 @@ public class Server implements Comparable<Server>{
    */
   @Override
   public String toString () {
-    return type + " " + ID;
+    return getType() + " " + ID;
   }
 
   /**
@@ -176,9 +337,9 @@ public class Server implements Comparable<Server>{
 
     String serverDetails = "";
 
-    serverDetails += (this.type + " ");
+    serverDetails += (getType() + " ");
     serverDetails += (Integer.toString(this.ID) + " ");
-    serverDetails += (this.state + " ");
+    serverDetails += (getState() + " ");
     serverDetails += (Integer.toString(this.curStartTime) + " ");
     serverDetails += (Integer.toString(this.core) + " ");
     serverDetails += (Integer.toString(this.mem) + " ");
@@ -190,6 +351,18 @@ public class Server implements Comparable<Server>{
 
   }
 
+  /**
+   * Finds the end of a space delimited field.
+   * 
+   * @param s     the string holding the fields
+   * @param start the index of the first character of the field
+   * @return the index after the last character of the field
+   */
+  private static int fieldEnd(String s, int start) {
+    int end = s.indexOf(' ', start);
+    return end == -1 ? s.length() : end;
+  }
+
   /**
    * First priority to sort cores ascending. Second priority to sort ID
    * ascending.
@@ -0,0 +1,131 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Immutable catalog of the server types of a ds-sim system, grouped by type, as
+ * described by the 'server' elements of ds-system.xml. The catalog can be
+ * written to and read from a compact binary form, so that it can be cached
+ * between runs.
+ */
+public class ServerCatalog {
+  private final String[] types;
+  private final int[] limits, bootTimes, cores, mems, disks;
+  private final float[] hourlyRates;
+
+  /**
+   * Builds a catalog from parallel lists of server type attributes.
+   *
+   * @param types       the server type names
+   * @param limits      the number of servers of each type
+   * @param bootTimes   the boot time of each type
+   * @param hourlyRates the hourly rate of each type
+   * @param cores       the core count of each type
+   * @param mems        the memory of each type
+   * @param disks       the disk space of each type
+   */
+  public ServerCatalog(String[] types, int[] limits, int[] bootTimes, float[] hourlyRates, int[] cores, int[] mems,
+      int[] disks) {
+    this.types = types.clone();
+    this.limits = limits.clone();
+    this.bootTimes = bootTimes.clone();
+    this.hourlyRates = hourlyRates.clone();
+    this.cores = cores.clone();
+    this.mems = mems.clone();
+    this.disks = disks.clone();
+  }
+
+  public int getNumTypes() {
+    return this.types.length;
+  }
+
+  public String getType(int t) {
+    return this.types[t];
+  }
+
+  public int getLimit(int t) {
+    return this.limits[t];
+  }
+
+  public int getBootTime(int t) {
+    return this.bootTimes[t];
+  }
+
+  public float getHourlyRate(int t) {
+    return this.hourlyRates[t];
+  }
+
+  public int getCore(int t) {
+    return this.cores[t];
+  }
+
+  public int getMem(int t) {
+    return this.mems[t];
+  }
+
+  public int getDisk(int t) {
+    return this.disks[t];
+  }
+
+  /**
+   * Generates a Server object for every server of every type in the catalog.
+   *
+   * @return a List of Server objects in type then ID order
+   */
+  public List<Server> toServers() {
+    List<Server> servers = new ArrayList<Server>();
+    for (int t = 0; t < types.length; t++) {
+      int type = ServerType.intern(types[t]);
+      for (int ID = 0; ID < limits[t]; ID++) {
+        servers.add(new Server(type, ID, ServerState.UNKNOWN, -1, cores[t], mems[t], disks[t], bootTimes[t],
+            hourlyRates[t]));
+      }
+    }
+    return servers;
+  }
+
+  /**
+   * Writes the catalog in its binary form.
+   *
+   * @param out the stream to write to
+   * @throws IOException
+   */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(types.length);
+    for (int t = 0; t < types.length; t++) {
+      out.writeUTF(types[t]);
+      out.writeInt(limits[t]);
+      out.writeInt(bootTimes[t]);
+      out.writeFloat(hourlyRates[t]);
+      out.writeInt(cores[t]);
+      out.writeInt(mems[t]);
+      out.writeInt(disks[t]);
+    }
+  }
+
+  /**
+   * Reads a catalog written by write().
+   *
+   * @param in the stream to read from
+   * @return the ServerCatalog read
+   * @throws IOException
+   */
+  public static ServerCatalog read(DataInputStream in) throws IOException {
+    int numTypes = in.readInt();
+    String[] types = new String[numTypes];
+    int[] limits = new int[numTypes], bootTimes = new int[numTypes], cores = new int[numTypes],
+        mems = new int[numTypes], disks = new int[numTypes];
+    float[] hourlyRates = new float[numTypes];
+
+    for (int t = 0; t < numTypes; t++) {
+      types[t] = in.readUTF();
+      limits[t] = in.readInt();
+      bootTimes[t] = in.readInt();
+      hourlyRates[t] = in.readFloat();
+      cores[t] = in.readInt();
+      mems[t] = in.readInt();
+      disks[t] = in.readInt();
+    }
+
+    return new ServerCatalog(types, limits, bootTimes, hourlyRates, cores, mems, disks);
+  }
+}
@@ -0,0 +1,177 @@
+import java.util.*;
+
+/**
+ * Samples a fixed number of random servers capable of a job from the server
+ * catalog, for scheduling by the "power of d choices": evaluating only d random
+ * servers keeps the queries of a decision independent of the cluster size,
+ * while choosing the best of several servers still spreads the load nearly as
+ * well as evaluating all of them.
+ *
+ * The catalog lists the servers of each type together, so the capable servers
+ * are found by type and a sample is drawn from their indices with Floyd's
+ * algorithm, without scanning the servers. Excluded servers, such as servers
+ * that failed, are skipped when the drawn indices are mapped to servers, so
+ * they never take a place in the sample. The random generator is seeded so that
+ * sessions are repeatable.
+ */
+public class ServerSampler {
+  private final static long SEED = 1;
+
+  private final List<Server> catalog;
+  private final int sampleSize;
+  private final Random random = new Random(SEED);
+  // The first catalog index and the capacity of each run of servers of the same
+  // type.
+  private final int[] typeStart, typeCores, typeMems, typeDisks;
+
+  /**
+   * Constructs a sampler over a server catalog.
+   *
+   * @param catalog    the List of Servers in ds-system.xml, or from 'GETS All'
+   *                   before any job is scheduled
+   * @param sampleSize the number of servers to sample for each job
+   */
+  public ServerSampler(List<Server> catalog, int sampleSize) {
+    this.catalog = catalog;
+    this.sampleSize = sampleSize;
+
+    List<Integer> starts = new ArrayList<Integer>();
+    for (int i = 0; i < catalog.size(); i++) {
+      if (i == 0 || catalog.get(i).getTypeCode() != catalog.get(i - 1).getTypeCode()) {
+        starts.add(i);
+      }
+    }
+    int numTypes = starts.size();
+    typeStart = new int[numTypes + 1];
+    typeCores = new int[numTypes];
+    typeMems = new int[numTypes];
+    typeDisks = new int[numTypes];
+    for (int t = 0; t < numTypes; t++) {
+      Server s = catalog.get(starts.get(t));
+      typeStart[t] = starts.get(t);
+      typeCores[t] = s.getCore();
+      typeMems[t] = s.getMem();
+      typeDisks[t] = s.getDisk();
+    }
+    typeStart[numTypes] = catalog.size();
+  }
+
+  /**
+   * Samples the servers capable of a job, without repetition. All capable
+   * servers are returned if there are no more than the sample size.
+   *
+   * @param reqCore the required cores of the job
+   * @param reqMem  the required memory of the job
+   * @param reqDisk the required disk of the job
+   * @return the sampled catalog Servers in catalog order
+   */
+  public List<Server> sample(int reqCore, int reqMem, int reqDisk) {
+    return sample(reqCore, reqMem, reqDisk, Collections.<Long>emptySet());
+  }
+
+  /**
+   * Samples the capable servers of a job that are not excluded, without
+   * repetition. All of them are returned if there are no more than the sample
+   * size, and the excluded servers are only sampled if every capable server is
+   * excluded.
+   *
+   * @param reqCore  the required cores of the job
+   * @param reqMem   the required memory of the job
+   * @param reqDisk  the required disk of the job
+   * @param excluded the keys of the excluded servers, the type code shifted left
+   *                 by 32 bits or'ed with the server ID
+   * @return the sampled catalog Servers in catalog order, empty if no server is
+   *         capable of the job
+   */
+  public List<Server> sample(int reqCore, int reqMem, int reqDisk, Set<Long> excluded) {
+    // Find the runs of capable servers and their total number.
+    int[] runs = new int[typeCores.length];
+    int[] runOffsets = new int[typeCores.length];
+    int numRuns = 0, numCapable = 0;
+    for (int t = 0; t < typeCores.length; t++) {
+      if (typeCores[t] >= reqCore && typeMems[t] >= reqMem && typeDisks[t] >= reqDisk) {
+        runs[numRuns++] = t;
+        runOffsets[t] = numCapable;
+        numCapable += typeStart[t + 1] - typeStart[t];
+      } else {
+        runOffsets[t] = -1;
+      }
+    }
+
+    // Find the indices of the excluded capable servers.
+    int[] skipped = new int[excluded.size()];
+    int numSkipped = 0;
+    for (long key : excluded) {
+      int t = typeOf((int) (key >>> 32));
+      int ID = (int) key;
+      if (t >= 0 && runOffsets[t] >= 0 && ID >= 0 && ID < typeStart[t + 1] - typeStart[t]) {
+        skipped[numSkipped++] = runOffsets[t] + ID;
+      }
+    }
+    if (numSkipped == numCapable) {
+      // Sample the excluded servers rather than none at all.
+      numSkipped = 0;
+    }
+    Arrays.sort(skipped, 0, numSkipped);
+
+    // Draw distinct indices of the capable servers that are not excluded with
+    // Floyd's algorithm.
+    int numEligible = numCapable - numSkipped;
+    int n = Math.min(sampleSize, numEligible);
+    Set<Integer> drawn = new HashSet<Integer>(n * 2);
+    for (int i = numEligible - n; i < numEligible; i++) {
+      int k = random.nextInt(i + 1);
+      drawn.add(drawn.contains(k) ? i : k);
+    }
+    int[] indices = new int[n];
+    int next = 0;
+    for (int k : drawn) {
+      indices[next++] = k;
+    }
+    Arrays.sort(indices);
+
+    // Map the drawn indices to the indices of the capable servers, stepping over
+    // the excluded servers.
+    int skip = 0;
+    for (int i = 0; i < n; i++) {
+      int k = indices[i] + skip;
+      while (skip < numSkipped && skipped[skip] <= k) {
+        skip++;
+        k = indices[i] + skip;
+      }
+      indices[i] = k;
+    }
+
+    // Map the indices of the capable servers to catalog indices, keeping catalog
+    // order so that ties are resolved like the full search.
+    List<Server> servers = new ArrayList<Server>(n);
+    int run = 0, runOffset = 0;
+    for (int k : indices) {
+      while (k - runOffset >= typeStart[runs[run] + 1] - typeStart[runs[run]]) {
+        runOffset += typeStart[runs[run] + 1] - typeStart[runs[run]];
+        run++;
+      }
+      servers.add(catalog.get(typeStart[runs[run]] + k - runOffset));
+    }
+    return servers;
+  }
+
+  /**
+   * Finds the run of servers of a type in the catalog.
+   *
+   * @param typeCode the server type code
+   * @return the run of the type, or -1 if the catalog has no server of the type
+   */
+  private int typeOf(int typeCode) {
+    for (int t = 0; t < typeCores.length; t++) {
+      if (catalog.get(typeStart[t]).getTypeCode() == typeCode) {
+        return t;
+      }
+    }
+    return -1;
+  }
+
+  public int getSampleSize() {
+    return this.sampleSize;
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ * Interned codes for the server states reported by ds-server, so that servers
+ * carry a small int instead of a state string and state checks are integer
+ * compares.
+ */
+public final class ServerState {
+  public final static int INACTIVE = 0;
+  public final static int BOOTING = 1;
+  public final static int IDLE = 2;
+  public final static int ACTIVE = 3;
+  public final static int UNAVAILABLE = 4;
+  public final static int UNKNOWN = 5;
+
+  private final static String[] NAMES = { "inactive", "booting", "idle", "active", "unavailable", "unknown" };
+
+  private ServerState() {
+  }
+
+  /**
+   * Gets the state code of a state name in part of a string, without allocating
+   * a substring.
+   *
+   * @param s     the string holding the state name
+   * @param start the index of the first character of the state name
+   * @param end   the index after the last character of the state name
+   * @return the state code, or UNKNOWN if the name isn't a ds-server state
+   */
+  public static int parse(String s, int start, int end) {
+    int length = end - start;
+    for (int code = 0; code < UNKNOWN; code++) {
+      if (NAMES[code].length() == length && s.regionMatches(start, NAMES[code], 0, length)) {
+        return code;
+      }
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Gets the state code of a state name.
+   *
+   * @param name the state name
+   * @return the state code, or UNKNOWN if the name isn't a ds-server state
+   */
+  public static int parse(String name) {
+    return parse(name, 0, name.length());
+  }
+
+  /**
+   * Gets the state name of a state code.
+   *
+   * @param code the state code
+   * @return the state name as reported by ds-server
+   */
+  public static String name(int code) {
+    return NAMES[code];
+  }
+}
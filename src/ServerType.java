@@ -0,0 +1,128 @@
+import java.util.*;
+
+/**
+ * Shared table of interned server type names. Each distinct type name gets a
+ * small int code once, so that servers carry the code instead of their own copy
+ * of the name, and type names read from ds-server messages are looked up
+ * without allocating a substring.
+ *
+ * Lookups read an immutable snapshot of the table without locking, and new
+ * names are added by copying the table, as the number of server types is small
+ * and fixed for a ds-server session. The table is shared by all sessions in the
+ * JVM.
+ */
+public final class ServerType {
+  private final static class Table {
+    private final String[] names;
+    // Open addressing hash table of codes + 1, with 0 for an empty slot.
+    private final int[] slots;
+
+    private Table(String[] names, int[] slots) {
+      this.names = names;
+      this.slots = slots;
+    }
+  }
+
+  private static volatile Table table = new Table(new String[0], new int[16]);
+
+  private ServerType() {
+  }
+
+  /**
+   * Gets the code of a type name in part of a string, adding the name to the
+   * table if it is new. Known names are looked up without allocating.
+   *
+   * @param s     the string holding the type name
+   * @param start the index of the first character of the type name
+   * @param end   the index after the last character of the type name
+   * @return the type code
+   */
+  public static int intern(String s, int start, int end) {
+    int hash = hash(s, start, end);
+    int code = find(table, s, start, end, hash);
+    if (code >= 0) {
+      return code;
+    }
+    return add(s.substring(start, end), hash);
+  }
+
+  /**
+   * Gets the code of a type name, adding the name to the table if it is new.
+   *
+   * @param name the type name
+   * @return the type code
+   */
+  public static int intern(String name) {
+    return intern(name, 0, name.length());
+  }
+
+  /**
+   * Gets the type name of a type code.
+   *
+   * @param code the type code
+   * @return the type name
+   */
+  public static String name(int code) {
+    return table.names[code];
+  }
+
+  /**
+   * Gets the number of interned type names.
+   *
+   * @return the number of type codes
+   */
+  public static int count() {
+    return table.names.length;
+  }
+
+  private static int find(Table t, String s, int start, int end, int hash) {
+    int mask = t.slots.length - 1;
+    int length = end - start;
+    for (int i = hash & mask; t.slots[i] != 0; i = (i + 1) & mask) {
+      String name = t.names[t.slots[i] - 1];
+      if (name.length() == length && s.regionMatches(start, name, 0, length)) {
+        return t.slots[i] - 1;
+      }
+    }
+    return -1;
+  }
+
+  private static synchronized int add(String name, int hash) {
+    // Another session may have added the name since the lock-free lookup.
+    Table t = table;
+    int code = find(t, name, 0, name.length(), hash);
+    if (code >= 0) {
+      return code;
+    }
+
+    code = t.names.length;
+    String[] names = Arrays.copyOf(t.names, code + 1);
+    names[code] = name;
+
+    // Keep the hash table at most half full.
+    int capacity = t.slots.length;
+    while (capacity < names.length * 2) {
+      capacity <<= 1;
+    }
+    int[] slots = new int[capacity];
+    for (int c = 0; c < names.length; c++) {
+      int i = hash(names[c], 0, names[c].length()) & (capacity - 1);
+      while (slots[i] != 0) {
+        i = (i + 1) & (capacity - 1);
+      }
+      slots[i] = c + 1;
+    }
+
+    table = new Table(names, slots);
+    return code;
+  }
+
+  private static int hash(String s, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + s.charAt(i);
+    }
+    // Spread the high bits, as the table is indexed by the low bits.
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,337 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.*;
+
+/**
+ * Live telemetry of a scheduling session, registered as an MXBean so that a
+ * running scheduler can be watched with standard JVM tools such as jconsole.
+ * The telemetry is updated incrementally by the session as it dispatches jobs
+ * and receives job completions, server failures and recoveries, and terminates
+ * servers, so each update costs a map lookup and a few arithmetic operations.
+ *
+ * The cluster state is the one known to the client: a server is rented from
+ * the first job scheduled to it until it is terminated or fails, it is booting
+ * until its boot time has passed, and its queued jobs are those scheduled to it
+ * and not yet completed. Rates and waiting times are exponential moving
+ * averages over about the last MOVING_AVERAGE_DECISIONS decisions.
+ *
+ * Each session is registered under
+ * 'DSClient:type=Session,endpoint="host:port",id=n'.
+ */
+public class SessionTelemetry implements SessionTelemetryMXBean {
+  private final static int MOVING_AVERAGE_DECISIONS = 100;
+  private final static double ALPHA = 2.0 / (MOVING_AVERAGE_DECISIONS + 1);
+  private final static AtomicInteger sessionIDs = new AtomicInteger();
+
+  // State of a rented server
+  private static class ServerStatus {
+    final int type;
+    volatile int queuedJobs, bootEnd;
+
+    ServerStatus(int type, int bootEnd) {
+      this.type = type;
+      this.bootEnd = bootEnd;
+    }
+  }
+
+  // The rented servers, keyed by ServerType code and server ID, and the failed
+  // servers.
+  private final Map<Long, ServerStatus> servers = new ConcurrentHashMap<Long, ServerStatus>();
+  private final Set<Long> failedServers = ConcurrentHashMap.newKeySet();
+  // Boot times by ServerType code, if known from the server catalog.
+  private int[] typeBootTimes = new int[0];
+  private ObjectName name;
+
+  private volatile int simulationTime, queuedJobs;
+  private volatile long scheduledJobs, completedJobs, resubmittedJobs, totalPredictedWait;
+  private volatile double decisionInterval, predictedWait;
+  private final long startTime = System.nanoTime();
+  private long lastDecisionTime = startTime;
+
+  /**
+   * Sets the boot times of the server types from the server catalog, to tell
+   * which servers are booting.
+   *
+   * @param catalog the List of Servers in ds-system.xml
+   */
+  public void setBootTimes(List<Server> catalog) {
+    for (Server s : catalog) {
+      int type = s.getTypeCode();
+      if (type >= typeBootTimes.length) {
+        typeBootTimes = Arrays.copyOf(typeBootTimes, type + 1);
+      }
+      typeBootTimes[type] = s.getBootTime();
+    }
+  }
+
+  /**
+   * Registers the telemetry with the platform MBean server.
+   *
+   * @param host the host of the ds-server of the session
+   * @param port the port of the ds-server of the session
+   */
+  public void register(String host, int port) {
+    try {
+      name = new ObjectName("DSClient:type=Session,endpoint=" + ObjectName.quote(host + ":" + port) + ",id="
+          + sessionIDs.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    } catch (JMException e) {
+      System.err.println("Could not register session telemetry: " + e.getMessage());
+      name = null;
+    }
+  }
+
+  /**
+   * Unregisters the telemetry from the platform MBean server.
+   */
+  public void unregister() {
+    if (name == null) {
+      return;
+    }
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    } catch (JMException e) {
+      System.err.println("Could not unregister session telemetry: " + e.getMessage());
+    }
+    name = null;
+  }
+
+  /**
+   * Records a job received for scheduling.
+   *
+   * @param j the Job received with 'JOBN' or 'JOBP'
+   */
+  public void received(Job j) {
+    simulationTime = j.getSubmitTime();
+    if (j.isResubmitted()) {
+      resubmittedJobs++;
+    }
+  }
+
+  /**
+   * Records a job dispatched to a server.
+   *
+   * @param j              the dispatched Job
+   * @param s              the Server the Job was dispatched to
+   * @param predictedStart the predicted start time of the job
+   */
+  public void dispatched(Job j, Server s, int predictedStart) {
+    int type = s.getTypeCode();
+    long key = key(type, s.getID());
+    ServerStatus status = servers.get(key);
+    if (status == null) {
+      // The first job boots the server, unless ds-server reported it booted.
+      int bootTime = type < typeBootTimes.length ? typeBootTimes[type] : 0;
+      int bootEnd = s.getStateCode() == ServerState.BOOTING ? s.getCurStartTime()
+          : s.getStateCode() == ServerState.INACTIVE || s.getStateCode() == ServerState.UNKNOWN
+              ? j.getSubmitTime() + bootTime
+              : j.getSubmitTime();
+      status = new ServerStatus(type, bootEnd);
+      servers.put(key, status);
+    }
+    status.queuedJobs++;
+    queuedJobs++;
+    scheduledJobs++;
+
+    // Update the moving averages of the time between decisions and of the
+    // predicted waiting time.
+    long now = System.nanoTime();
+    int wait = Math.max(0, predictedStart - j.getSubmitTime());
+    decisionInterval = scheduledJobs == 1 ? now - lastDecisionTime
+        : decisionInterval + ALPHA * ((now - lastDecisionTime) - decisionInterval);
+    lastDecisionTime = now;
+    predictedWait = scheduledJobs == 1 ? wait : predictedWait + ALPHA * (wait - predictedWait);
+    totalPredictedWait += wait;
+  }
+
+  /**
+   * Records a job completion reported with 'JCPL'.
+   *
+   * @param time     the completion time
+   * @param type     the ServerType code of the server
+   * @param serverID the ID of the server
+   */
+  public void completed(int time, int type, int serverID) {
+    simulationTime = time;
+    completedJobs++;
+    ServerStatus status = servers.get(key(type, serverID));
+    if (status != null && status.queuedJobs > 0) {
+      status.queuedJobs--;
+      queuedJobs--;
+    }
+  }
+
+  /**
+   * Records a server failure reported with 'RESF'. The jobs of the server are
+   * resubmitted by ds-server.
+   *
+   * @param time     the failure time
+   * @param type     the ServerType code of the server
+   * @param serverID the ID of the server
+   */
+  public void failed(int time, int type, int serverID) {
+    simulationTime = time;
+    long key = key(type, serverID);
+    failedServers.add(key);
+    release(key);
+  }
+
+  /**
+   * Records a server recovery reported with 'RESR'.
+   *
+   * @param time     the recovery time
+   * @param type     the ServerType code of the server
+   * @param serverID the ID of the server
+   */
+  public void recovered(int time, int type, int serverID) {
+    simulationTime = time;
+    failedServers.remove(key(type, serverID));
+  }
+
+  /**
+   * Records a server terminated with 'TERM'.
+   *
+   * @param s the terminated Server
+   */
+  public void terminated(Server s) {
+    release(key(s.getTypeCode(), s.getID()));
+  }
+
+  private void release(long key) {
+    ServerStatus status = servers.remove(key);
+    if (status != null) {
+      queuedJobs -= status.queuedJobs;
+    }
+  }
+
+  private static long key(int type, int ID) {
+    return (long) type << 32 | ID;
+  }
+
+  @Override
+  public int getSimulationTime() {
+    return simulationTime;
+  }
+
+  @Override
+  public long getScheduledJobs() {
+    return scheduledJobs;
+  }
+
+  @Override
+  public long getCompletedJobs() {
+    return completedJobs;
+  }
+
+  @Override
+  public long getResubmittedJobs() {
+    return resubmittedJobs;
+  }
+
+  @Override
+  public int getQueuedJobs() {
+    return queuedJobs;
+  }
+
+  @Override
+  public int getRentedServers() {
+    return servers.size();
+  }
+
+  @Override
+  public int getBootingServers() {
+    int booting = 0;
+    for (ServerStatus status : servers.values()) {
+      if (status.bootEnd > simulationTime) {
+        booting++;
+      }
+    }
+    return booting;
+  }
+
+  @Override
+  public int getBusyServers() {
+    int busy = 0;
+    for (ServerStatus status : servers.values()) {
+      if (status.queuedJobs > 0) {
+        busy++;
+      }
+    }
+    return busy;
+  }
+
+  @Override
+  public int getFailedServers() {
+    return failedServers.size();
+  }
+
+  @Override
+  public Map<String, Integer> getRentedServersByType() {
+    Map<String, Integer> rented = new TreeMap<String, Integer>();
+    for (ServerStatus status : servers.values()) {
+      rented.merge(ServerType.name(status.type), 1, Integer::sum);
+    }
+    return rented;
+  }
+
+  @Override
+  public Map<String, Integer> getQueuedJobsByType() {
+    Map<String, Integer> queued = new TreeMap<String, Integer>();
+    for (ServerStatus status : servers.values()) {
+      queued.merge(ServerType.name(status.type), status.queuedJobs, Integer::sum);
+    }
+    return queued;
+  }
+
+  @Override
+  public Map<String, Double> getUtilisationByType() {
+    Map<String, Integer> rented = new TreeMap<String, Integer>();
+    Map<String, Integer> busy = new TreeMap<String, Integer>();
+    for (ServerStatus status : servers.values()) {
+      String type = ServerType.name(status.type);
+      rented.merge(type, 1, Integer::sum);
+      busy.merge(type, status.queuedJobs > 0 ? 1 : 0, Integer::sum);
+    }
+
+    Map<String, Double> utilisation = new TreeMap<String, Double>();
+    for (Map.Entry<String, Integer> entry : rented.entrySet()) {
+      utilisation.put(entry.getKey(), (double) busy.get(entry.getKey()) / entry.getValue());
+    }
+    return utilisation;
+  }
+
+  @Override
+  public double getDecisionsPerSecond() {
+    return decisionInterval > 0 ? 1e9 / decisionInterval : 0;
+  }
+
+  @Override
+  public double getMeanDecisionsPerSecond() {
+    long elapsed = System.nanoTime() - startTime;
+    return elapsed > 0 ? scheduledJobs * 1e9 / elapsed : 0;
+  }
+
+  @Override
+  public double getPredictedWaitAverage() {
+    return predictedWait;
+  }
+
+  @Override
+  public double getMeanPredictedWait() {
+    long n = scheduledJobs;
+    return n > 0 ? (double) totalPredictedWait / n : 0;
+  }
+
+  /**
+   * Summarises the telemetry at the end of a session.
+   *
+   * @return the session telemetry
+   */
+  @Override
+  public String toString() {
+    return String.format("%d jobs scheduled at %.1f decisions/s, mean predicted wait %.1f s, %d servers rented",
+        scheduledJobs, getMeanDecisionsPerSecond(), getMeanPredictedWait(), servers.size());
+  }
+}
@@ -0,0 +1,81 @@
+import java.util.*;
+
+/**
+ * Management interface of the live telemetry of a scheduling session, exposed
+ * over JMX by SessionTelemetry. Times are simulation seconds unless stated
+ * otherwise.
+ */
+public interface SessionTelemetryMXBean {
+  /**
+   * @return the latest simulation time reported by ds-server
+   */
+  int getSimulationTime();
+
+  long getScheduledJobs();
+
+  long getCompletedJobs();
+
+  /**
+   * @return the number of jobs resubmitted with 'JOBP' after a server failure
+   */
+  long getResubmittedJobs();
+
+  /**
+   * @return the number of jobs scheduled and not yet completed, waiting or
+   *         running
+   */
+  int getQueuedJobs();
+
+  /**
+   * @return the number of servers that were booted by a scheduled job and not
+   *         terminated or failed since
+   */
+  int getRentedServers();
+
+  /**
+   * @return the number of rented servers that have not finished booting
+   */
+  int getBootingServers();
+
+  /**
+   * @return the number of rented servers with queued jobs
+   */
+  int getBusyServers();
+
+  /**
+   * @return the number of servers that failed and have not recovered
+   */
+  int getFailedServers();
+
+  Map<String, Integer> getRentedServersByType();
+
+  Map<String, Integer> getQueuedJobsByType();
+
+  /**
+   * @return the fraction of the rented servers of each type with queued jobs
+   */
+  Map<String, Double> getUtilisationByType();
+
+  /**
+   * @return the moving average of the decision rate, per wall clock second
+   */
+  double getDecisionsPerSecond();
+
+  /**
+   * @return the mean decision rate since the session started, per wall clock
+   *         second
+   */
+  double getMeanDecisionsPerSecond();
+
+  /**
+   * @return the moving average of the predicted waiting time of the scheduled
+   *         jobs
+   */
+  double getPredictedWaitAverage();
+
+  /**
+   * @return the mean predicted waiting time of the jobs scheduled since the
+   *         session started
+   */
+  double getMeanPredictedWait();
+}
@@ -0,0 +1,231 @@
+import java.util.*;
+
+/**
+ * Predicts the job lists and state of the servers locally, from the jobs the
+ * client dispatched and the events ds-server reported, without querying
+ * ds-server. It is the state that query-free scheduling would rely on, kept in
+ * the shadow of the real queries to measure how often it diverges from them.
+ *
+ * A server runs the jobs scheduled to it in order: once booted, the longest
+ * prefix of its queue that fits its capacity is running and the rest wait,
+ * because ds-server starts waiting jobs in order whenever a job completes. The
+ * prefix is recomputed at every dispatch and completion on the server, which
+ * gives the start time of the jobs it admits. Jobs admitted while the server
+ * boots start when it has booted.
+ */
+public class ShadowModel {
+  // The predicted queue of a server
+  private static class Queue {
+    final List<Job> jobs = new ArrayList<Job>();
+    final int bootEnd;
+
+    Queue(int bootEnd) {
+      this.bootEnd = bootEnd;
+    }
+  }
+
+  // The servers with scheduled jobs or booted by the client, keyed by ServerType
+  // code and server ID.
+  private final Map<Long, Queue> queues = new HashMap<Long, Queue>();
+  private final Set<Long> failedServers = new HashSet<Long>();
+  // Capacities and boot times of the server types by ServerType code.
+  private int[] typeCores = new int[0], typeMems = new int[0], typeDisks = new int[0], typeBootTimes = new int[0];
+  private final Map<Integer, Server> catalogServers = new HashMap<Integer, Server>();
+
+  /**
+   * Sets the server types from the server catalog.
+   *
+   * @param catalog the List of Servers in ds-system.xml
+   */
+  public void setCatalog(List<Server> catalog) {
+    for (Server s : catalog) {
+      int type = s.getTypeCode();
+      if (type >= typeCores.length) {
+        typeCores = Arrays.copyOf(typeCores, type + 1);
+        typeMems = Arrays.copyOf(typeMems, type + 1);
+        typeDisks = Arrays.copyOf(typeDisks, type + 1);
+        typeBootTimes = Arrays.copyOf(typeBootTimes, type + 1);
+      }
+      typeCores[type] = s.getCore();
+      typeMems[type] = s.getMem();
+      typeDisks[type] = s.getDisk();
+      typeBootTimes[type] = s.getBootTime();
+      catalogServers.putIfAbsent(type, s);
+    }
+  }
+
+  /**
+   * Checks whether a server type is known from the server catalog.
+   *
+   * @param type the ServerType code
+   * @return true if the capacity of the type is known
+   */
+  public boolean knows(int type) {
+    return catalogServers.containsKey(type);
+  }
+
+  /**
+   * Applies a job dispatched to a server.
+   *
+   * @param j    the dispatched Job
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   * @param time the dispatch time
+   */
+  public void dispatched(Job j, int type, int ID, int time) {
+    if (!knows(type)) {
+      return;
+    }
+    Queue queue = queues.computeIfAbsent(key(type, ID), k -> new Queue(time + typeBootTimes[type]));
+    queue.jobs.add(new Job(j.getID(), JobState.WAITING, -1, j.getEstRuntime(), j.getCore(), j.getMemory(),
+        j.getDisk()));
+    admit(queue, type, time);
+  }
+
+  /**
+   * Applies a job completion reported with 'JCPL'.
+   *
+   * @param jobID the ID of the completed job
+   * @param type  the ServerType code of the server
+   * @param ID    the ID of the server
+   * @param time  the completion time
+   */
+  public void completed(int jobID, int type, int ID, int time) {
+    Queue queue = queues.get(key(type, ID));
+    if (queue != null && queue.jobs.removeIf(job -> job.getID() == jobID)) {
+      admit(queue, type, time);
+    }
+  }
+
+  /**
+   * Applies a server failure reported with 'RESF'. ds-server resubmits its jobs.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   */
+  public void failed(int type, int ID) {
+    queues.remove(key(type, ID));
+    failedServers.add(key(type, ID));
+  }
+
+  /**
+   * Applies a server recovery reported with 'RESR'. The server is inactive.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   */
+  public void recovered(int type, int ID) {
+    failedServers.remove(key(type, ID));
+  }
+
+  /**
+   * Applies a server terminated with 'TERM'.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   */
+  public void terminated(int type, int ID) {
+    queues.remove(key(type, ID));
+  }
+
+  /**
+   * Predicts the job list of a server, as 'LSTJ' would list it.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   * @param time the current simulation time
+   * @return new Job objects in queue order, with their predicted state and start
+   *         time, which is -1 for waiting jobs
+   */
+  public List<Job> predictJobs(int type, int ID, int time) {
+    return copyJobs(type, ID, time, true);
+  }
+
+  /**
+   * Predicts the state of a server.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   * @param time the current simulation time
+   * @return the predicted ServerState code
+   */
+  public int predictState(int type, int ID, int time) {
+    long key = key(type, ID);
+    Queue queue = queues.get(key);
+    if (failedServers.contains(key)) {
+      return ServerState.UNAVAILABLE;
+    } else if (queue == null) {
+      return ServerState.INACTIVE;
+    } else if (time < queue.bootEnd) {
+      return ServerState.BOOTING;
+    }
+    return queue.jobs.isEmpty() ? ServerState.IDLE : ServerState.ACTIVE;
+  }
+
+  /**
+   * Predicts a server as 'GETS' would list it: its state, and the available
+   * resources and job counts derived from its predicted queue.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   * @param time the current simulation time
+   * @return a new Server with the predicted state, available resources and job
+   *         counts
+   */
+  public Server predictServer(int type, int ID, int time) {
+    // Derive the resources from the admitted start times, as the jobs admitted
+    // while the server boots hold their resources although they are listed as
+    // waiting.
+    return catalogServers.get(type).observe(copyJobs(type, ID, time, false), ID, predictState(type, ID, time));
+  }
+
+  /**
+   * Copies the queue of a server with the predicted job states.
+   *
+   * @param listed whether to give waiting jobs the start time -1, as 'LSTJ'
+   *               lists them, rather than the time they are admitted to start
+   */
+  private List<Job> copyJobs(int type, int ID, int time, boolean listed) {
+    List<Job> jobs = new ArrayList<Job>();
+    Queue queue = queues.get(key(type, ID));
+    if (queue == null) {
+      return jobs;
+    }
+    for (Job job : queue.jobs) {
+      // Jobs admitted while booting are listed as waiting until the server has
+      // booted.
+      int state = job.getStartTime() >= 0 && time >= queue.bootEnd ? JobState.RUNNING : JobState.WAITING;
+      int startTime = listed && state == JobState.WAITING ? -1 : job.getStartTime();
+      jobs.add(new Job(job.getID(), state, startTime, job.getEstRuntime(), job.getCore(), job.getMemory(),
+          job.getDisk()));
+    }
+    return jobs;
+  }
+
+  /**
+   * Recomputes the running prefix of a queue after a dispatch or completion.
+   * The jobs newly admitted start at the event time, or when the server has
+   * booted.
+   */
+  private void admit(Queue queue, int type, int time) {
+    int core = typeCores[type], mem = typeMems[type], disk = typeDisks[type];
+    boolean blocked = false;
+    for (Job job : queue.jobs) {
+      blocked = blocked || job.getCore() > core || job.getMemory() > mem || job.getDisk() > disk;
+      if (blocked) {
+        job.setStartTime(-1);
+        continue;
+      }
+      core -= job.getCore();
+      mem -= job.getMemory();
+      disk -= job.getDisk();
+      if (job.getStartTime() < 0) {
+        job.setStartTime(Math.max(time, queue.bootEnd));
+      }
+    }
+  }
+
+  private static long key(int type, int ID) {
+    return (long) type << 32 | ID;
+  }
+}
@@ -0,0 +1,199 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Validates the state predicted locally by a ShadowModel against ds-server in
+ * shadow mode: the client keeps scheduling from the real queries, and after
+ * each decision made from 'GETS Capable' the prediction of every capable
+ * server is compared with its 'GETS' line, its job list with 'LSTJ', and its
+ * next available time with the one evaluated from the real job list. The
+ * decision is also made again from the predicted state alone, to count the
+ * decisions that query-free scheduling would have made differently.
+ *
+ * The job lists are only listed for the servers that ds-server or the model
+ * reports with jobs, so shadow mode adds up to one 'LSTJ' per busy capable
+ * server to each decision. The differing decisions are written to a CSV file
+ * at the end of the session.
+ */
+public class ShadowValidator {
+  private final ShadowModel model = new ShadowModel();
+  private final CandidateSet candidates = new CandidateSet();
+  // The decisions that differ, as CSV lines.
+  private final List<String> differences = new ArrayList<String>();
+  private long decisions, servers, divergedServers, jobLists, divergedJobLists, availableTimes,
+      divergedAvailableTimes, availableTimeError;
+
+  /**
+   * Constructs a validator predicting the servers of a server catalog.
+   *
+   * @param catalog the List of Servers in ds-system.xml
+   */
+  public ShadowValidator(List<Server> catalog) {
+    model.setCatalog(catalog);
+  }
+
+  public ShadowModel getModel() {
+    return this.model;
+  }
+
+  /**
+   * Compares the predicted state of the capable servers of a decision with
+   * ds-server, and the decision made from the predicted state with the real
+   * one. Must be called before the job is dispatched.
+   *
+   * @param client         the DSClient making the decision, to query ds-server
+   *                       and score the predicted servers like the real ones
+   * @param j              the Job being scheduled
+   * @param capableServers the capable Servers from 'GETS Capable' that the
+   *                       decision was made from
+   * @param chosen         the Server chosen by the real decision
+   * @param realTimes      the next available times of the capable servers
+   *                       evaluated from their real job lists, with -1 for the
+   *                       servers not evaluated, or null if the decision found
+   *                       a fit or they are ds-server waiting time estimates
+   */
+  public void validate(DSClient client, Job j, List<Server> capableServers, Server chosen, int[] realTimes) {
+    int time = j.getSubmitTime();
+    int numServers = capableServers.size();
+    int decisionDivergedServers = 0, decisionDivergedJobLists = 0;
+    List<Server> predicted = new ArrayList<Server>(numServers);
+    List<List<Job>> predictedJobs = new ArrayList<List<Job>>(numServers);
+
+    // Compare the predicted state and job list of each server with ds-server.
+    for (Server s : capableServers) {
+      List<Job> jobs = model.predictJobs(s.getTypeCode(), s.getID(), time);
+      Server p = model.predictServer(s.getTypeCode(), s.getID(), time);
+      predicted.add(p);
+      predictedJobs.add(jobs);
+
+      servers++;
+      if (p.getStateCode() != s.getStateCode() || p.getCore() != s.getCore() || p.getMem() != s.getMem()
+          || p.getDisk() != s.getDisk() || p.getWJobs() != s.getWJobs() || p.getRJobs() != s.getRJobs()) {
+        decisionDivergedServers++;
+      }
+      if (s.getWJobs() + s.getRJobs() > 0 || !jobs.isEmpty()) {
+        jobLists++;
+        if (!sameJobs(jobs, client.getServerJobs(s))) {
+          decisionDivergedJobLists++;
+        }
+      }
+    }
+    divergedServers += decisionDivergedServers;
+    divergedJobLists += decisionDivergedJobLists;
+
+    // Make the decision again from the predicted state, scoring the predicted
+    // servers like the client.
+    candidates.load(predicted);
+    if (client.bootingAsAvailable) {
+      for (int i = 0; i < numServers; i++) {
+        if (candidates.getState(i) == ServerState.BOOTING) {
+          candidates.setPendingJobs(i,
+              (int) predictedJobs.get(i).stream().filter(job -> job.getStartTime() == -1).count());
+        }
+      }
+    }
+    client.scoreCandidates(candidates, j);
+    int best = candidates.argMin();
+
+    // If no predicted server fits, choose the one predicted available soonest,
+    // comparing its next available time with the real one where it was
+    // evaluated. If the client goes by the waiting time estimates of ds-server,
+    // choose by the predicted estimates instead.
+    if (best < 0) {
+      int minTime = Integer.MAX_VALUE;
+      for (int i = 0; i < numServers; i++) {
+        Server p = predicted.get(i);
+        int availableTime = client.useEstWaitTime ? estWaitTime(predictedJobs.get(i))
+            : DSClient.calcServerAvailableTime(p, predictedJobs.get(i),
+                new Resource(p.getCore(), p.getMem(), p.getDisk(), p.getWJobs()), j.getCore(), j.getMemory(),
+                j.getDisk(), client.runtimeScale);
+        if (realTimes != null && realTimes[i] >= 0) {
+          availableTimes++;
+          availableTimeError += Math.abs(availableTime - realTimes[i]);
+          if (availableTime != realTimes[i]) {
+            divergedAvailableTimes++;
+          }
+        }
+        if (availableTime < minTime) {
+          best = i;
+          minTime = availableTime;
+        }
+      }
+    }
+
+    // Record the decision if the predicted state leads to a different server.
+    decisions++;
+    Server shadowServer = predicted.get(best);
+    if (shadowServer.getTypeCode() != chosen.getTypeCode() || shadowServer.getID() != chosen.getID()) {
+      differences.add(j.getID() + "," + time + "," + chosen.getType() + " " + chosen.getID() + ","
+          + shadowServer.getType() + " " + shadowServer.getID() + "," + numServers + "," + decisionDivergedServers
+          + "," + decisionDivergedJobLists);
+    }
+  }
+
+  /**
+   * Predicts the waiting time estimate of a server as 'EJWT' would report it:
+   * the estimated runtimes of its waiting jobs.
+   */
+  private static int estWaitTime(List<Job> jobs) {
+    int estWaitTime = 0;
+    for (Job job : jobs) {
+      if (job.getState() == JobState.WAITING) {
+        estWaitTime += job.getEstRuntime();
+      }
+    }
+    return estWaitTime;
+  }
+
+  /**
+   * Compares a predicted job list with the one listed by ds-server, by job ID,
+   * state and start time in order.
+   */
+  private static boolean sameJobs(List<Job> predicted, List<Job> real) {
+    if (predicted.size() != real.size()) {
+      return false;
+    }
+    for (int i = 0; i < predicted.size(); i++) {
+      Job p = predicted.get(i), r = real.get(i);
+      if (p.getID() != r.getID() || p.getState() != r.getState() || p.getStartTime() != r.getStartTime()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the decisions that differ to a CSV file.
+   *
+   * @param path the path of the CSV file
+   * @throws IOException
+   */
+  public void writeCsv(String path) throws IOException {
+    try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+      out.println("job,time,server,shadow_server,capable_servers,diverged_servers,diverged_job_lists");
+      for (String line : differences) {
+        out.println(line);
+      }
+    }
+  }
+
+  /**
+   * Summarises the divergence rates at the end of a session.
+   *
+   * @return the divergence rates of the decisions, server states, job lists and
+   *         next available times
+   */
+  @Override
+  public String toString() {
+    return String.format(
+        "%d of %d decisions differ (%.1f%%), %.1f%% of %d server states, %.1f%% of %d job lists, "
+            + "%.1f%% of %d next available times (mean error %.1f s)",
+        differences.size(), decisions, percent(differences.size(), decisions), percent(divergedServers, servers),
+        servers, percent(divergedJobLists, jobLists), jobLists, percent(divergedAvailableTimes, availableTimes),
+        availableTimes, availableTimes > 0 ? (double) availableTimeError / availableTimes : 0);
+  }
+
+  private static double percent(long part, long total) {
+    return total > 0 ? 100.0 * part / total : 0;
+  }
+}
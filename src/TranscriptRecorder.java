@@ -0,0 +1,122 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.*;
+
+/**
+ * Records the full message stream of a session with ds-server to a compact,
+ * gzip compressed transcript file, so that the session can be replayed later
+ * by the TranscriptReplayer without ds-server.
+ *
+ * The transcript starts with a header holding the contents of ds-system.xml,
+ * followed by one record per message: the direction, the time since the
+ * previous record in microseconds as a variable length integer, and the
+ * message text.
+ */
+public class TranscriptRecorder implements Closeable {
+  public final static int MAGIC = 0x44535452; // "DSTR"
+  public final static int VERSION = 1;
+  public final static int FROM_CLIENT = 0, FROM_SERVER = 1;
+
+  private final DataOutputStream out;
+  private long lastNanos;
+
+  /**
+   * Creates a transcript file and writes its header.
+   *
+   * @param path          the path of the transcript file
+   * @param systemXmlPath the path of ds-system.xml to embed, or null if
+   *                      unavailable
+   * @throws IOException
+   */
+  public TranscriptRecorder(String path, String systemXmlPath) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(path))));
+
+    byte[] systemXml = new byte[0];
+    if (systemXmlPath != null && new File(systemXmlPath).exists()) {
+      systemXml = Files.readAllBytes(Paths.get(systemXmlPath));
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(systemXml.length);
+    out.write(systemXml);
+    lastNanos = System.nanoTime();
+  }
+
+  /**
+   * Records a message sent by the client.
+   *
+   * @param message the message text
+   */
+  public void sent(String message) {
+    record(FROM_CLIENT, message);
+  }
+
+  /**
+   * Records a message received from ds-server.
+   *
+   * @param message the message text
+   */
+  public void received(String message) {
+    record(FROM_SERVER, message);
+  }
+
+  private synchronized void record(int direction, String message) {
+    // Nothing is received once the connection has been closed.
+    if (message == null) {
+      return;
+    }
+
+    try {
+      long now = System.nanoTime();
+      out.writeByte(direction);
+      writeVarLong(out, (now - lastNanos) / 1000L);
+      byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(out, bytes.length);
+      out.write(bytes);
+      lastNanos = now;
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Writes a non-negative long as a variable length integer, 7 bits per byte.
+   *
+   * @param out   the stream to write to
+   * @param value the value to write
+   * @throws IOException
+   */
+  public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * Reads a variable length integer written by writeVarLong().
+   *
+   * @param in the stream to read from
+   * @return the value read
+   * @throws IOException
+   */
+  public static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b = in.readUnsignedByte();
+    while ((b & 0x80) != 0) {
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+      b = in.readUnsignedByte();
+    }
+    return value | ((long) b << shift);
+  }
+}
@@ -0,0 +1,186 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Replays a transcript recorded with DSClient '--record' by acting as a fake
+ * ds-server. The messages of the client are checked against the transcript and
+ * the recorded ds-server messages are sent back, either as fast as possible or
+ * with their original timing, so that the scheduling path can be benchmarked
+ * and bisected on exact real traffic. The ds-system.xml embedded in the
+ * transcript is written to the working directory, like ds-server does.
+ *
+ * As the replayed messages follow the recorded order, the client must run with
+ * the same options as the recorded session.
+ *
+ * Usage: java TranscriptReplayer [-p port] [--timing] [--repeat n] transcript
+ *
+ * "-p port" -> The port to listen on. Defaults to 50000.
+ *
+ * "--timing" -> Delay each ds-server message by its recorded delay after the
+ * previous client message. Messages are sent as fast as possible if omitted.
+ *
+ * "--repeat n" -> Accept and replay n client sessions in turn. Defaults to 1.
+ */
+public class TranscriptReplayer {
+  private final int[] directions;
+  private final long[] delaysMicros;
+  private final String[] messages;
+  private final byte[] systemXml;
+
+  /**
+   * Loads a transcript file.
+   *
+   * @param path the path of the transcript file
+   * @throws IOException if the file can't be read or isn't a transcript
+   */
+  public TranscriptReplayer(String path) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new GZIPInputStream(new FileInputStream(path))))) {
+      if (in.readInt() != TranscriptRecorder.MAGIC || in.readInt() != TranscriptRecorder.VERSION) {
+        throw new IOException("Not a transcript file: " + path);
+      }
+
+      systemXml = new byte[in.readInt()];
+      in.readFully(systemXml);
+
+      List<Integer> directionList = new ArrayList<Integer>();
+      List<Long> delayList = new ArrayList<Long>();
+      List<String> messageList = new ArrayList<String>();
+      int direction = in.read();
+      while (direction != -1) {
+        directionList.add(direction);
+        delayList.add(TranscriptRecorder.readVarLong(in));
+        byte[] bytes = new byte[(int) TranscriptRecorder.readVarLong(in)];
+        in.readFully(bytes);
+        messageList.add(new String(bytes, StandardCharsets.UTF_8));
+        direction = in.read();
+      }
+
+      directions = directionList.stream().mapToInt(Integer::intValue).toArray();
+      delaysMicros = delayList.stream().mapToLong(Long::longValue).toArray();
+      messages = messageList.toArray(new String[0]);
+    }
+  }
+
+  public static void main(String[] args) {
+    int port = 50000, repeat = 1;
+    boolean timing = false;
+    String path = null;
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-p")) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--timing")) {
+        timing = true;
+      } else if (args[i].equals("--repeat")) {
+        repeat = Integer.parseInt(args[++i]);
+      } else {
+        path = args[i];
+      }
+    }
+    if (path == null) {
+      System.err.println("Usage: TranscriptReplayer [-p port] [--timing] [--repeat n] transcript");
+      System.exit(1);
+    }
+
+    try {
+      TranscriptReplayer replayer = new TranscriptReplayer(path);
+      if (replayer.systemXml.length > 0) {
+        Files.write(Paths.get("ds-system.xml"), replayer.systemXml);
+      }
+
+      try (ServerSocket serverSocket = new ServerSocket(port)) {
+        for (int session = 0; session < repeat; session++) {
+          try (Socket client = serverSocket.accept()) {
+            client.setTcpNoDelay(true);
+            replayer.replay(client, timing);
+          }
+        }
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Replays the transcript to a connected client and prints the replay duration
+   * and any divergence from the transcript to System.out.
+   *
+   * @param client the Socket connection to the client
+   * @param timing whether to reproduce the recorded delays of ds-server messages
+   * @return true if the client followed the transcript to the end
+   * @throws IOException
+   */
+  public boolean replay(Socket client, boolean timing) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+    OutputStream out = new BufferedOutputStream(client.getOutputStream());
+
+    long start = System.nanoTime();
+    long lastClientNanos = start;
+    long recordedSinceClientMicros = 0;
+    int clientMessages = 0;
+
+    for (int i = 0; i < messages.length; i++) {
+      recordedSinceClientMicros += delaysMicros[i];
+
+      if (directions[i] == TranscriptRecorder.FROM_CLIENT) {
+        // Flush the replies to the previous messages before waiting for the client.
+        out.flush();
+        String message = in.readLine();
+        lastClientNanos = System.nanoTime();
+        recordedSinceClientMicros = 0;
+        clientMessages++;
+
+        if (!messages[i].equals(message)) {
+          System.out.println("Diverged at client message " + clientMessages + ": expected '" + messages[i]
+              + "' but got '" + message + "'");
+          return false;
+        }
+      } else {
+        // Wait until the recorded delay since the last client message has passed.
+        if (timing) {
+          long deadline = lastClientNanos + recordedSinceClientMicros * 1000L;
+          if (deadline > System.nanoTime()) {
+            out.flush();
+            waitUntil(deadline);
+          }
+        }
+        out.write((messages[i] + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    out.flush();
+
+    long elapsedMs = (System.nanoTime() - start) / 1000000L;
+    System.out.println("Replayed " + messages.length + " messages (" + clientMessages + " from the client) in "
+        + elapsedMs + " ms");
+    return true;
+  }
+
+  /**
+   * Waits until the given System.nanoTime() deadline. Sleeps while more than a
+   * millisecond remains and spins for the rest, as sleeps aren't precise enough
+   * for the sub-millisecond delays of a local ds-server.
+   *
+   * @param deadline the time to wait until
+   */
+  private static void waitUntil(long deadline) {
+    long remaining = deadline - System.nanoTime();
+    while (remaining > 0) {
+      if (remaining > 1000000L) {
+        try {
+          Thread.sleep((remaining - 1000000L) / 1000000L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      } else {
+        Thread.onSpinWait();
+      }
+      remaining = deadline - System.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,377 @@
+import javax.xml.stream.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Generates large synthetic ds-sim workloads for client scaling tests: a
+ * ds-sim configuration with many server types, a job list file and a server
+ * failure trace, in the same formats as ds-sample-config05.xml,
+ * ds-sample-config05-jobs.xml and ds-sample-config05-failures.txt. The job list
+ * and failure trace are streamed to disk, so millions of jobs can be generated
+ * without holding them in memory.
+ *
+ * Job runtimes follow the job types of the '<jobs>' section and job arrivals
+ * follow the load range of the '<workload>' section, either of a template
+ * configuration or of ds-sample-config05.xml by default.
+ *
+ * Usage: java WorkloadGenerator [--servers n] [--types n] [--jobs n]
+ * [--arrival poisson|uniform|alternating] [--min-load n] [--max-load n]
+ * [--failures n] [--mttr n] [--seed n] [--template config.xml] [--name name]
+ * [--out directory]
+ *
+ * "--servers n" -> The total number of servers. Defaults to 2000.
+ *
+ * "--types n" -> The number of server types. Defaults to 20.
+ *
+ * "--jobs n" -> The number of jobs. Defaults to 1000000.
+ *
+ * "--arrival poisson|uniform|alternating" -> The distribution of the times
+ * between job submissions. 'alternating' is Poisson with a load alternating
+ * between the minimum and maximum load every 12 hours. Defaults to poisson.
+ *
+ * "--min-load n", "--max-load n" -> The load range in percent of the total
+ * server cores. Defaults to the template workload.
+ *
+ * "--failures n" -> The number of server failures in the failure trace.
+ * Defaults to 0, which generates no failure trace.
+ *
+ * "--mttr n" -> The mean time to recover from a failure in seconds. Defaults to
+ * 1800.
+ */
+public class WorkloadGenerator {
+  private final static int ALTERNATING_PERIOD = 43200;
+  private final static int MAX_TYPE_CORES = 64;
+
+  private final Random random;
+
+  // Server types
+  private String[] serverTypes;
+  private int[] limits, bootTimes, cores, mems, disks;
+  private float[] hourlyRates;
+
+  // Job types, modelled on the template configuration
+  private List<String> jobTypes = new ArrayList<String>();
+  private List<int[]> jobTypeRuntimes = new ArrayList<int[]>();
+  private List<Integer> populationRates = new ArrayList<Integer>();
+  private int minLoad = 10, maxLoad = 30;
+
+  public WorkloadGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  public static void main(String[] args) {
+    int numServers = 2000, numTypes = 20, numJobs = 1000000, numFailures = 0, mttr = 1800;
+    int minLoad = -1, maxLoad = -1;
+    long seed = 1;
+    String arrival = "poisson", template = "configs/sample-configs/ds-sample-config05.xml", name = "synthetic",
+        outDir = ".";
+
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--servers")) {
+        numServers = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--types")) {
+        numTypes = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--jobs")) {
+        numJobs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--arrival")) {
+        arrival = args[++i];
+      } else if (args[i].equals("--min-load")) {
+        minLoad = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--max-load")) {
+        maxLoad = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--failures")) {
+        numFailures = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--mttr")) {
+        mttr = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("--seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--template")) {
+        template = args[++i];
+      } else if (args[i].equals("--name")) {
+        name = args[++i];
+      } else if (args[i].equals("--out")) {
+        outDir = args[++i];
+      } else {
+        System.err.println("Invalid argument: " + args[i]);
+        System.exit(1);
+      }
+    }
+
+    if (!arrival.equals("poisson") && !arrival.equals("uniform") && !arrival.equals("alternating")) {
+      System.err.println("Invalid arrival distribution: " + arrival);
+      System.exit(1);
+    }
+
+    try {
+      WorkloadGenerator generator = new WorkloadGenerator(seed);
+      generator.loadTemplate(new File(template));
+      if (minLoad >= 0) {
+        generator.minLoad = minLoad;
+      }
+      if (maxLoad >= 0) {
+        generator.maxLoad = Math.max(maxLoad, generator.minLoad);
+      }
+      generator.generateServerTypes(numServers, numTypes);
+
+      File dir = new File(outDir);
+      dir.mkdirs();
+      String jobsFile = name + "-jobs.xml";
+      String failuresFile = numFailures > 0 ? name + "-failures.txt" : null;
+
+      int endTime = generator.writeJobs(new File(dir, jobsFile), numJobs, arrival);
+      if (failuresFile != null) {
+        generator.writeFailures(new File(dir, failuresFile), name + ".xml", numFailures, mttr, endTime);
+      }
+      generator.writeConfig(new File(dir, name + ".xml"), jobsFile, failuresFile, numJobs, endTime, seed);
+
+      System.out.println("Generated " + name + ".xml: " + numServers + " servers of " + numTypes + " types, "
+          + numJobs + " jobs until " + endTime + "s, " + numFailures + " failures");
+    } catch (IOException | XMLStreamException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Reads the job types and the load range of a template ds-sim configuration.
+   *
+   * @param template the template configuration file
+   * @throws IOException
+   * @throws XMLStreamException
+   */
+  public void loadTemplate(File template) throws IOException, XMLStreamException {
+    try (InputStream in = new FileInputStream(template)) {
+      XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      while (xml.hasNext()) {
+        if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        if (xml.getLocalName().equals("job") && xml.getAttributeValue(null, "minRunTime") != null) {
+          jobTypes.add(xml.getAttributeValue(null, "type"));
+          jobTypeRuntimes.add(new int[] { Integer.parseInt(xml.getAttributeValue(null, "minRunTime")),
+              Integer.parseInt(xml.getAttributeValue(null, "maxRunTime")) });
+          populationRates.add(Integer.parseInt(xml.getAttributeValue(null, "populationRate")));
+        } else if (xml.getLocalName().equals("workload")) {
+          minLoad = Integer.parseInt(xml.getAttributeValue(null, "minLoad"));
+          maxLoad = Integer.parseInt(xml.getAttributeValue(null, "maxLoad"));
+        }
+      }
+      xml.close();
+    }
+
+    if (jobTypes.isEmpty()) {
+      throw new IOException("No job types found in template " + template);
+    }
+  }
+
+  /**
+   * Generates heterogeneous server types. Sizes double from 1 core up to
+   * MAX_TYPE_CORES, and types of the same size alternate between balanced,
+   * memory-heavy and disk-heavy shapes. The servers are spread evenly over the
+   * types.
+   *
+   * @param numServers the total number of servers
+   * @param numTypes   the number of server types
+   */
+  public void generateServerTypes(int numServers, int numTypes) {
+    numTypes = Math.max(1, Math.min(numTypes, numServers));
+    int numSizes = Integer.numberOfTrailingZeros(MAX_TYPE_CORES) + 1;
+
+    serverTypes = new String[numTypes];
+    limits = new int[numTypes];
+    bootTimes = new int[numTypes];
+    cores = new int[numTypes];
+    mems = new int[numTypes];
+    disks = new int[numTypes];
+    hourlyRates = new float[numTypes];
+
+    for (int t = 0; t < numTypes; t++) {
+      int size = t % numSizes;
+      int shape = (t / numSizes) % 3;
+
+      cores[t] = 1 << size;
+      mems[t] = cores[t] * (shape == 1 ? 8000 : 4000);
+      disks[t] = cores[t] * (shape == 2 ? 64000 : 16000);
+      limits[t] = numServers / numTypes + (t < numServers % numTypes ? 1 : 0);
+      bootTimes[t] = 60 + random.nextInt(61);
+      hourlyRates[t] = Math.round(cores[t] * (shape == 0 ? 0.1f : 0.12f) * 100f) / 100f;
+      serverTypes[t] = "t" + t + "-c" + cores[t] + (shape == 1 ? "-mem" : shape == 2 ? "-disk" : "");
+    }
+  }
+
+  /**
+   * Streams the job list to a file. Job sizes are drawn so that every job fits
+   * on the largest server type, with runtimes drawn from the job types by their
+   * population rates.
+   *
+   * @param file     the job list file
+   * @param numJobs  the number of jobs
+   * @param arrival  the distribution of the times between job submissions
+   * @return the submit time of the last job plus the longest job runtime
+   * @throws IOException
+   */
+  public int writeJobs(File file, int numJobs, String arrival) throws IOException {
+    int maxCores = 0, totalCores = 0;
+    for (int t = 0; t < cores.length; t++) {
+      maxCores = Math.max(maxCores, cores[t]);
+      totalCores += cores[t] * limits[t];
+    }
+    int totalRate = populationRates.stream().mapToInt(Integer::intValue).sum();
+    int maxRuntime = jobTypeRuntimes.stream().mapToInt(r -> r[1]).max().orElse(1);
+
+    // The mean core-seconds of a job, to convert the load into an arrival rate.
+    double meanRuntime = 0;
+    for (int k = 0; k < jobTypes.size(); k++) {
+      meanRuntime += (jobTypeRuntimes.get(k)[0] + jobTypeRuntimes.get(k)[1]) / 2.0 * populationRates.get(k) / totalRate;
+    }
+    double meanCores = meanJobCores(maxCores);
+
+    long submitTime = 0;
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16))) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<!-- job list generated by WorkloadGenerator -->");
+      out.println("<jobs>");
+      for (int k = 0; k < jobTypes.size(); k++) {
+        out.println("\t<type name=\"" + jobTypes.get(k) + "\" minRunTime=\"" + jobTypeRuntimes.get(k)[0]
+            + "\" maxRunTime=\"" + jobTypeRuntimes.get(k)[1] + "\" populationRate=\"" + populationRates.get(k) + "\" />");
+      }
+
+      for (int id = 0; id < numJobs; id++) {
+        // Draw the current load and the time to the next submission.
+        double load;
+        if (arrival.equals("alternating")) {
+          load = (submitTime / ALTERNATING_PERIOD) % 2 == 0 ? minLoad : maxLoad;
+        } else {
+          load = minLoad + random.nextDouble() * (maxLoad - minLoad);
+        }
+        double meanGap = meanRuntime * meanCores / (Math.max(1, load) / 100.0 * totalCores);
+        double gap = arrival.equals("uniform") ? random.nextDouble() * 2 * meanGap
+            : -Math.log(1 - random.nextDouble()) * meanGap;
+        submitTime += Math.round(gap);
+
+        // Draw the job type by population rate, then its runtime.
+        int pick = random.nextInt(totalRate), k = 0;
+        while (pick >= populationRates.get(k)) {
+          pick -= populationRates.get(k);
+          k++;
+        }
+        int[] runtimes = jobTypeRuntimes.get(k);
+        int estRuntime = runtimes[0] + random.nextInt(runtimes[1] - runtimes[0] + 1);
+
+        // Draw the job shape, with per core memory and disk within the smallest
+        // per core capacity of the server types.
+        int jobCores = drawJobCores(maxCores);
+        int memory = Math.max(100, jobCores * (100 * (1 + random.nextInt(20))));
+        int disk = Math.max(100, jobCores * (100 * (1 + random.nextInt(80))));
+
+        out.println("\t<job id=\"" + id + "\" type=\"" + jobTypes.get(k) + "\" submitTime=\"" + submitTime
+            + "\" estRunTime=\"" + estRuntime + "\" cores=\"" + jobCores + "\" memory=\"" + memory + "\" disk=\""
+            + disk + "\" />");
+      }
+      out.println("</jobs>");
+    }
+
+    return (int) Math.min(Integer.MAX_VALUE, submitTime + maxRuntime);
+  }
+
+  /**
+   * Streams a failure trace to a file, with failures at uniformly random times
+   * on uniformly random servers and exponentially distributed recovery times.
+   *
+   * @param file        the failure trace file
+   * @param configName  the name of the configuration, for the trace header
+   * @param numFailures the number of failures
+   * @param mttr        the mean time to recover in seconds
+   * @param endTime     the end time of the simulation
+   * @throws IOException
+   */
+  public void writeFailures(File file, String configName, int numFailures, int mttr, int endTime) throws IOException {
+    int totalServers = Arrays.stream(limits).sum();
+
+    // Sort the failure start times, as ds-sim reads the trace in time order.
+    int[] starts = new int[numFailures];
+    for (int f = 0; f < numFailures; f++) {
+      starts[f] = random.nextInt(Math.max(1, endTime));
+    }
+    Arrays.sort(starts);
+
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16))) {
+      out.println("#base_trace: synthetic, config_file: " + configName + ", total_servers: " + totalServers
+          + ", total_time: " + endTime + ", mttr: " + mttr);
+      for (int f = 0; f < numFailures; f++) {
+        int server = random.nextInt(totalServers), t = 0;
+        while (server >= limits[t]) {
+          server -= limits[t];
+          t++;
+        }
+        int recovery = starts[f] + 1 + (int) Math.round(-Math.log(1 - random.nextDouble()) * mttr);
+        out.println(starts[f] + " " + recovery + " " + serverTypes[t] + " " + server);
+      }
+    }
+  }
+
+  /**
+   * Writes the ds-sim configuration referencing the job list and failure trace.
+   *
+   * @param file         the configuration file
+   * @param jobsFile     the name of the job list file
+   * @param failuresFile the name of the failure trace file, or null for none
+   * @param numJobs      the number of jobs
+   * @param endTime      the end time of the simulation
+   * @param seed         the random seed
+   * @throws IOException
+   */
+  public void writeConfig(File file, String jobsFile, String failuresFile, int numJobs, int endTime, long seed)
+      throws IOException {
+    try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)))) {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<!-- generated by: WorkloadGenerator -->");
+      out.println("<config randomSeed=\"" + seed + "\">");
+      out.println("  <servers" + (failuresFile != null ? " failureFile=\"" + failuresFile + "\"" : "") + ">");
+      for (int t = 0; t < serverTypes.length; t++) {
+        out.println("\t<server type=\"" + serverTypes[t] + "\" limit=\"" + limits[t] + "\" bootupTime=\""
+            + bootTimes[t] + "\" hourlyRate=\"" + hourlyRates[t] + "\" coreCount=\"" + cores[t] + "\" memory=\""
+            + mems[t] + "\" disk=\"" + disks[t] + "\" />");
+      }
+      out.println("  </servers>");
+      out.println("  <jobs file=\"" + jobsFile + "\"/>");
+      out.println("  <workload type=\"synthetic\" minLoad=\"" + minLoad + "\" maxLoad=\"" + maxLoad + "\" />");
+      out.println("  <termination>");
+      out.println("\t<condition type=\"endtime\" value=\"" + endTime + "\" />");
+      out.println("\t<condition type=\"jobcount\" value=\"" + numJobs + "\" />");
+      out.println("  </termination>");
+      out.println("</config>");
+    }
+  }
+
+  /**
+   * Draws the core count of a job, halving the probability with every doubling
+   * of the core count so that most jobs are small.
+   *
+   * @param maxCores the core count of the largest server type
+   * @return the core count of the job
+   */
+  private int drawJobCores(int maxCores) {
+    int upper = 1;
+    while (upper < maxCores && random.nextBoolean()) {
+      upper <<= 1;
+    }
+    return (upper >> 1) + 1 + random.nextInt(Math.max(1, upper - (upper >> 1)));
+  }
+
+  /**
+   * Calculates the expected core count of drawJobCores().
+   *
+   * @param maxCores the core count of the largest server type
+   * @return the mean core count of a job
+   */
+  private static double meanJobCores(int maxCores) {
+    double mean = 0, probability = 0.5;
+    for (int upper = 1; upper <= maxCores; upper <<= 1) {
+      double p = upper == maxCores ? probability * 2 : probability;
+      int lower = (upper >> 1) + 1;
+      mean += p * (lower + upper) / 2.0;
+      probability /= 2;
+    }
+    return mean;
+  }
+}
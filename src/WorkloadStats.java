@@ -0,0 +1,311 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+/**
+ * Compact workload statistics kept across scheduling sessions on the same
+ * system, so that a session starts from what earlier sessions observed instead
+ * of from nothing. The statistics are stored in a directory, one file per
+ * system named by the hash of its ds-system.xml contents, and are saved when
+ * the session quits.
+ *
+ * The statistics hold the ratio of the observed to the estimated runtime,
+ * measured on the jobs that started as soon as they were scheduled, which
+ * scales the runtimes in the replays of the job lists. For each server type,
+ * they hold the servers terminated with 'TERM' and the terminated servers that
+ * had to be booted again, which decide whether idle servers of the type are
+ * worth terminating. Each save halves the weight of the earlier sessions, so
+ * the statistics follow the recent workload.
+ */
+public class WorkloadStats {
+  private final static int STATS_MAGIC = 0x44535732; // "DSW2"
+  private final static String STATS_EXTENSION = ".stats";
+  private final static double DECAY = 0.5;
+  // Share of the terminated servers of a type that are booted again, above which
+  // its idle servers are kept instead of terminated.
+  private final static double KEEP_IDLE_REBOOT_SHARE = 0.25;
+
+  // Statistics of a server type
+  private static class TypeStats {
+    double terminations, reboots;
+
+    void add(TypeStats other, double weight) {
+      terminations += weight * other.terminations;
+      reboots += weight * other.reboots;
+    }
+
+    void scale(double factor) {
+      terminations *= factor;
+      reboots *= factor;
+    }
+  }
+
+  // A job that started as soon as it was scheduled and has not completed
+  private static class StartedJob {
+    final int startTime, estRuntime;
+
+    StartedJob(int startTime, int estRuntime) {
+      this.startTime = startTime;
+      this.estRuntime = estRuntime;
+    }
+  }
+
+  private final File file;
+  private final byte[] hash;
+  // The statistics of the earlier sessions, and those of this session, by server
+  // type name so that they don't depend on the type codes of a session.
+  private final Map<String, TypeStats> history = new TreeMap<String, TypeStats>();
+  private final Map<String, TypeStats> session = new TreeMap<String, TypeStats>();
+  private double historyEstimated, historyObserved, sessionEstimated, sessionObserved;
+  private int sessions;
+
+  // The servers terminated and not booted again since, keyed by ServerType code
+  // and server ID.
+  private final Set<Long> terminatedServers = new HashSet<Long>();
+  private final Map<Integer, StartedJob> startedJobs = new HashMap<Integer, StartedJob>();
+
+  private WorkloadStats(File file, byte[] hash) {
+    this.file = file;
+    this.hash = hash;
+  }
+
+  /**
+   * Loads the statistics of a system from a statistics directory, or starts
+   * empty statistics if there are none for the system.
+   *
+   * @param dir           the statistics directory
+   * @param systemXmlPath the path of ds-system.xml
+   * @return the WorkloadStats of the system, or null if ds-system.xml could not
+   *         be read
+   */
+  public static WorkloadStats load(String dir, String systemXmlPath) {
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(Paths.get(systemXmlPath)));
+    } catch (IOException | NoSuchAlgorithmException e) {
+      System.err.println("Could not hash '" + systemXmlPath + "': " + e.getMessage());
+      return null;
+    }
+
+    WorkloadStats stats = new WorkloadStats(new File(dir, HexFormat.of().formatHex(hash) + STATS_EXTENSION), hash);
+    if (stats.file.exists()) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stats.file)))) {
+        stats.read(in);
+      } catch (IOException e) {
+        // Start from empty statistics if the file is unreadable.
+        System.err.println("Could not load workload statistics: " + e.getMessage());
+        stats = new WorkloadStats(stats.file, hash);
+      }
+    }
+    return stats;
+  }
+
+  private void read(DataInputStream in) throws IOException {
+    if (in.readInt() != STATS_MAGIC) {
+      throw new IOException("not a workload statistics file");
+    }
+    byte[] fileHash = new byte[in.readUnsignedByte()];
+    in.readFully(fileHash);
+    if (!Arrays.equals(fileHash, hash)) {
+      throw new IOException("written for another ds-system.xml");
+    }
+
+    sessions = in.readInt();
+    historyEstimated = in.readDouble();
+    historyObserved = in.readDouble();
+    int numTypes = in.readInt();
+    for (int t = 0; t < numTypes; t++) {
+      TypeStats stats = new TypeStats();
+      history.put(in.readUTF(), stats);
+      stats.terminations = in.readDouble();
+      stats.reboots = in.readDouble();
+    }
+  }
+
+  /**
+   * Records a job dispatched to a server. A job scheduled to a server that was
+   * terminated boots it again.
+   *
+   * @param j         the dispatched Job
+   * @param s         the Server the Job was dispatched to
+   * @param startsNow whether the job starts as soon as it is scheduled, on a
+   *                  server that is already booted
+   */
+  public void dispatched(Job j, Server s, boolean startsNow) {
+    if (terminatedServers.remove(key(s.getTypeCode(), s.getID()))) {
+      typeStats(s.getTypeCode()).reboots++;
+    }
+    if (startsNow) {
+      startedJobs.put(j.getID(), new StartedJob(j.getSubmitTime(), j.getEstRuntime()));
+    } else {
+      startedJobs.remove(j.getID());
+    }
+  }
+
+  /**
+   * Records a job completion reported with 'JCPL'. The runtime is observed if
+   * the job started when it was scheduled.
+   *
+   * @param time  the completion time
+   * @param jobID the ID of the completed job
+   */
+  public void completed(int time, int jobID) {
+    StartedJob job = startedJobs.remove(jobID);
+    if (job != null) {
+      sessionEstimated += job.estRuntime;
+      sessionObserved += time - job.startTime;
+    }
+  }
+
+  /**
+   * Records a server terminated with 'TERM'.
+   *
+   * @param type the ServerType code of the server
+   * @param ID   the ID of the server
+   */
+  public void terminated(int type, int ID) {
+    terminatedServers.add(key(type, ID));
+    typeStats(type).terminations++;
+  }
+
+  /**
+   * Decides whether idle servers of a type should be kept rather than
+   * terminated, because earlier sessions had to boot again many of the servers
+   * of the type they terminated.
+   *
+   * @param type the ServerType code
+   * @return true if idle servers of the type should be kept
+   */
+  public boolean keepsIdle(int type) {
+    TypeStats stats = history.get(ServerType.name(type));
+    return stats != null && stats.terminations > 0
+        && stats.reboots / stats.terminations > KEEP_IDLE_REBOOT_SHARE;
+  }
+
+  /**
+   * Gets the ratio of the observed to the estimated runtimes in earlier
+   * sessions, to scale the estimated runtimes by.
+   *
+   * @return the runtime ratio, or 1 if no runtime was observed
+   */
+  public float getRuntimeScale() {
+    return historyEstimated > 0 ? (float) (historyObserved / historyEstimated) : 1f;
+  }
+
+  /**
+   * Merges the statistics of this session into those of the earlier sessions,
+   * halving their weight, and writes them to the statistics file. The file is
+   * read again under a lock first, so that the sessions that saved since this
+   * one started are merged rather than overwritten.
+   */
+  public void save() {
+    file.getAbsoluteFile().getParentFile().mkdirs();
+    File lockFile = new File(file.getPath() + ".lock");
+    // File locks are held by the whole JVM, so sessions of the same JVM are
+    // serialised separately.
+    synchronized (WorkloadStats.class) {
+      try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE); FileLock lock = channel.lock()) {
+        reload();
+        merge();
+        write();
+      } catch (IOException e) {
+        System.err.println("Could not save workload statistics: " + e.getMessage());
+      }
+    }
+  }
+
+  // Replaces the statistics of the earlier sessions with those in the file.
+  private void reload() {
+    clearHistory();
+    if (file.exists()) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        read(in);
+      } catch (IOException e) {
+        System.err.println("Could not load workload statistics: " + e.getMessage());
+        clearHistory();
+      }
+    }
+  }
+
+  private void clearHistory() {
+    history.clear();
+    sessions = 0;
+    historyEstimated = 0;
+    historyObserved = 0;
+  }
+
+  private void merge() {
+    for (TypeStats stats : history.values()) {
+      stats.scale(DECAY);
+    }
+    for (Map.Entry<String, TypeStats> entry : session.entrySet()) {
+      history.computeIfAbsent(entry.getKey(), k -> new TypeStats()).add(entry.getValue(), 1);
+    }
+    historyEstimated = DECAY * historyEstimated + sessionEstimated;
+    historyObserved = DECAY * historyObserved + sessionObserved;
+    sessions++;
+  }
+
+  private void write() throws IOException {
+    // Write to a temporary file first so that sessions loading the statistics
+    // without the lock never read a partially written file.
+    File temp = new File(file.getPath() + "." + ProcessHandle.current().pid() + "-" + Thread.currentThread().getId()
+        + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        write(out);
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      temp.delete();
+    }
+  }
+
+  private void write(DataOutputStream out) throws IOException {
+    out.writeInt(STATS_MAGIC);
+    out.writeByte(hash.length);
+    out.write(hash);
+    out.writeInt(sessions);
+    out.writeDouble(historyEstimated);
+    out.writeDouble(historyObserved);
+    out.writeInt(history.size());
+    for (Map.Entry<String, TypeStats> entry : history.entrySet()) {
+      TypeStats stats = entry.getValue();
+      out.writeUTF(entry.getKey());
+      out.writeDouble(stats.terminations);
+      out.writeDouble(stats.reboots);
+    }
+  }
+
+  private TypeStats typeStats(int type) {
+    return session.computeIfAbsent(ServerType.name(type), k -> new TypeStats());
+  }
+
+  private static long key(int type, int ID) {
+    return (long) type << 32 | ID;
+  }
+
+  /**
+   * Summarises the statistics of the earlier sessions.
+   *
+   * @return the number of sessions, the runtime ratio, and the share of the
+   *         terminated servers of each type that were booted again
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(sessions).append(" earlier sessions");
+    if (historyEstimated > 0) {
+      sb.append(String.format(", runtimes %.2fx the estimates", historyObserved / historyEstimated));
+    }
+    for (Map.Entry<String, TypeStats> entry : history.entrySet()) {
+      TypeStats stats = entry.getValue();
+      sb.append(String.format(", %s %.0f%% of terminations rebooted", entry.getKey(),
+          stats.terminations > 0 ? 100 * stats.reboots / stats.terminations : 0));
+    }
+    return sb.toString();
+  }
+}
@@ -1,13 +1,25 @@
-import org.w3c.dom.*;
-import javax.xml.parsers.*;
+import javax.xml.stream.*;
 import java.io.*;
+import java.nio.file.*;
+import java.security.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
- * Parses the ds-system.xml file and generates a list of Server objects
+ * Parses the ds-system.xml file and generates a list of Server objects. The
+ * file is read with a streaming StAX parser into an immutable ServerCatalog,
+ * which is cached in a binary sidecar file next to ds-system.xml together with
+ * the hash of the file contents, so that repeated runs on the same system skip
+ * the XML parsing.
  */
 public class XMLParser {
-  private Document xmlDocument;
+  // Parsed server catalogs shared between the sessions running in this JVM,
+  // keyed by file path and modification time.
+  private final static Map<String, List<Server>> catalogCache = new ConcurrentHashMap<String, List<Server>>();
+  private final static int SIDECAR_MAGIC = 0x44534343; // "DSCC"
+  private final static String SIDECAR_EXTENSION = ".catalog";
+
+  private ServerCatalog catalog;
 
   public static void main(String[] args) {
     // Test of parsing ds-system.xml and getting the server list
@@ -25,14 +37,18 @@ public class XMLParser {
 
   public XMLParser(String filepath) {
     try {
-      // Load the ds-system.xml file and parse it as an xml Document object
-      File inputFile = new File(filepath);
-
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-
-      xmlDocument = dBuilder.parse(inputFile);
-      xmlDocument.getDocumentElement().normalize();
+      // Hash the ds-system.xml file and load the catalog from the sidecar file if
+      // it was cached from the same contents.
+      byte[] contents = Files.readAllBytes(Paths.get(filepath));
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(contents);
+      File sidecar = new File(filepath + SIDECAR_EXTENSION);
+
+      catalog = readSidecar(sidecar, hash);
+      if (catalog == null) {
+        // Otherwise parse the ds-system.xml file and cache the catalog.
+        catalog = parse(new ByteArrayInputStream(contents));
+        writeSidecar(sidecar, hash, catalog);
+      }
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -45,49 +61,153 @@ public class XMLParser {
    * @return a List of Server objects from the ds-system.xml file
    */
   public List<Server> getServers() {
-    List<Server> serverObjList = new ArrayList<Server>();
-
-    // If no xml document is loaded, return an empty list
-    if (xmlDocument == null) {
-      return serverObjList;
+    // If no catalog is loaded, return an empty list
+    if (catalog == null) {
+      return new ArrayList<Server>();
     }
 
-    // Get the elements under the 'server' tag in the ds-system.xml file
-    NodeList serverNodeList = this.xmlDocument.getElementsByTagName("server");
-    for (int i = 0; i < serverNodeList.getLength(); i++) {
-      Node serverNode = serverNodeList.item(i);
-      if (serverNode.getNodeType() == Node.ELEMENT_NODE) {
-        Element serverElement = (Element) serverNode;
-        
-        // For each server of a type (specified by the 'limit' attribute) generate a
-        // Server object with its unique ID and add it to the List
-        int numServers = Integer.parseInt(serverElement.getAttribute("limit"));
-        for (int ID = 0; ID < numServers; ID++) {
-
-          // 1) Server Type
-          String type = serverElement.getAttribute("type");
-          // 2) Server State
-          String state = "Unknown";
-          // 3) Cur Start Time
-          int curStartTime = -1;
-          // 4) Core Count
-          int core = Integer.parseInt(serverElement.getAttribute("coreCount"));
-          // 5 Memory
-          int mem = Integer.parseInt(serverElement.getAttribute("memory"));
-          // 6 Disk
-          int disk = Integer.parseInt(serverElement.getAttribute("disk"));
-          // 7 Boot Time
-          int bootTime = Integer.parseInt(serverElement.getAttribute("bootupTime"));
-          // 8 Hourly Rate
-          float hourlyRate = Float.parseFloat(serverElement.getAttribute("hourlyRate"));
-
-          Server serverObj = new Server(type, ID, state, curStartTime, core, mem, disk, bootTime, hourlyRate);
-          serverObjList.add(serverObj);
+    return catalog.toServers();
+  }
+
+  /**
+   * Gets the server types from the ds-system.xml file.
+   *
+   * @return the ServerCatalog of the ds-system.xml file, or null if it could not
+   *         be loaded
+   */
+  public ServerCatalog getServerCatalog() {
+    return this.catalog;
+  }
+
+  /**
+   * Parses the 'server' elements of a ds-system.xml document with a streaming
+   * StAX parser, stopping at the end of the 'servers' element.
+   *
+   * @param in the ds-system.xml contents
+   * @return the ServerCatalog of the server types
+   * @throws XMLStreamException
+   */
+  public static ServerCatalog parse(InputStream in) throws XMLStreamException {
+    List<String> types = new ArrayList<String>();
+    List<int[]> attributes = new ArrayList<int[]>();
+    List<Float> hourlyRates = new ArrayList<Float>();
+
+    XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+    try {
+      while (xml.hasNext()) {
+        int event = xml.next();
+        if (event == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("server")) {
+          // Read the attributes of each server type once.
+          types.add(xml.getAttributeValue(null, "type"));
+          attributes.add(new int[] { Integer.parseInt(xml.getAttributeValue(null, "limit")),
+              Integer.parseInt(xml.getAttributeValue(null, "bootupTime")),
+              Integer.parseInt(xml.getAttributeValue(null, "coreCount")),
+              Integer.parseInt(xml.getAttributeValue(null, "memory")),
+              Integer.parseInt(xml.getAttributeValue(null, "disk")) });
+          hourlyRates.add(Float.parseFloat(xml.getAttributeValue(null, "hourlyRate")));
+        } else if (event == XMLStreamConstants.END_ELEMENT && xml.getLocalName().equals("servers")) {
+          // The rest of the document describes the jobs and workload.
+          break;
         }
       }
+    } finally {
+      xml.close();
+    }
+
+    int numTypes = types.size();
+    int[] limits = new int[numTypes], bootTimes = new int[numTypes], cores = new int[numTypes],
+        mems = new int[numTypes], disks = new int[numTypes];
+    float[] rates = new float[numTypes];
+    for (int t = 0; t < numTypes; t++) {
+      int[] a = attributes.get(t);
+      limits[t] = a[0];
+      bootTimes[t] = a[1];
+      cores[t] = a[2];
+      mems[t] = a[3];
+      disks[t] = a[4];
+      rates[t] = hourlyRates.get(t);
     }
 
-    return serverObjList;
+    return new ServerCatalog(types.toArray(new String[0]), limits, bootTimes, rates, cores, mems, disks);
+  }
+
+  /**
+   * Reads the catalog from a sidecar file if it was written for the same
+   * ds-system.xml contents.
+   *
+   * @param sidecar the sidecar file
+   * @param hash    the hash of the ds-system.xml contents
+   * @return the cached ServerCatalog, or null if there is no valid sidecar
+   */
+  private static ServerCatalog readSidecar(File sidecar, byte[] hash) {
+    if (!sidecar.exists()) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+      if (in.readInt() != SIDECAR_MAGIC) {
+        return null;
+      }
+      byte[] cachedHash = new byte[in.readUnsignedByte()];
+      in.readFully(cachedHash);
+      if (!Arrays.equals(cachedHash, hash)) {
+        return null;
+      }
+      return ServerCatalog.read(in);
+    } catch (IOException e) {
+      // Treat an unreadable sidecar as a cache miss.
+      return null;
+    }
+  }
+
+  /**
+   * Writes the catalog to a sidecar file, keyed on the hash of the ds-system.xml
+   * contents. Failing to write the sidecar only disables the cache.
+   *
+   * @param sidecar the sidecar file
+   * @param hash    the hash of the ds-system.xml contents
+   * @param catalog the ServerCatalog to cache
+   */
+  private static void writeSidecar(File sidecar, byte[] hash, ServerCatalog catalog) {
+    // Write to a temporary file first so that concurrent runs never read a
+    // partially written sidecar.
+    File temp = new File(sidecar.getPath() + "." + ProcessHandle.current().pid() + "-" + Thread.currentThread().getId()
+        + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      out.writeInt(SIDECAR_MAGIC);
+      out.writeByte(hash.length);
+      out.write(hash);
+      catalog.write(out);
+    } catch (IOException e) {
+      System.err.println("Could not cache server catalog: " + e.getMessage());
+      temp.delete();
+      return;
+    }
+
+    try {
+      Files.move(temp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      System.err.println("Could not cache server catalog: " + e.getMessage());
+      temp.delete();
+    }
+  }
+
+  /**
+   * Gets the list of Servers from a ds-system.xml file as an immutable catalog.
+   * The file is only parsed the first time it is requested, or when it has been
+   * modified since, so that sessions scheduling on the same system share the
+   * catalog.
+   * 
+   * @param filepath the file path of ds-system.xml
+   * @return an unmodifiable List of Server objects from the ds-system.xml file
+   */
+  public static List<Server> getCatalog(String filepath) {
+    File file = new File(filepath);
+    String key = file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+
+    return catalogCache.computeIfAbsent(key,
+        k -> Collections.unmodifiableList(new XMLParser(filepath).getServers()));
   }
 
   /**
@@ -98,10 +218,15 @@ public class XMLParser {
    * @return the file path of ds-system.xml or "unavailable"
    */
   public static String getFilePath() {
-    String filepath = XMLParser.class.getProtectionDomain().getCodeSource().getLocation().getPath() + "ds-system.xml";
+    String location = XMLParser.class.getProtectionDomain().getCodeSource().getLocation().getPath();
 
     // Account for possible space chars in filepath
-    filepath = filepath.replaceAll("%20", " ");
+    location = location.replaceAll("%20", " ");
+
+    // When run from the packaged jar, look next to the jar.
+    File codeSource = new File(location);
+    String filepath = codeSource.isFile() ? new File(codeSource.getParentFile(), "ds-system.xml").getPath()
+        : location + "ds-system.xml";
 
     // Check to see whether ds-system.xml file exists in local directory
     File checkDir = new File(filepath);